@@ -0,0 +1,266 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+// Opérations sur plusieurs fichiers par une seule connexion (UPLOAD_BATCH, DOWNLOAD_BATCH, DELETE_BATCH).
+// Les requêtes sont envoyées par lots de BATCH_SIZE fichiers, au plus deux lots en attente de réponse: le lot suivant
+// part pendant que le serveur traite le précédent, sans que l'un des deux côtés ne bloque en écriture sur l'autre.
+// Synchroniser des milliers de petits fichiers ne coûte plus un aller-retour et une connexion par fichier.
+// Chaque opération renvoie l'erreur de chaque fichier, null pour un succès.
+public final class BatchTransfer {
+    // Fichiers par requête: les noms et les résultats tiennent dans un message (Protocol.MAX_MESSAGE_SIZE)
+    static final int BATCH_SIZE = 256;
+
+    private BatchTransfer() {
+    }
+
+    // Fichiers de "directory" dont le nom correspond au motif ("*.log"), triés
+    public static List<Path> matchLocal(Path directory, String pattern) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, pattern)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    // Noms demandés, les motifs étant remplacés par les fichiers du serveur qui y correspondent
+    public static List<String> matchRemote(Protocol.Connection connection, List<String> patterns) throws IOException {
+        List<String> stored = null;
+        Set<String> names = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            if (!isPattern(pattern)) {
+                names.add(pattern);
+                continue;
+            }
+            if (stored == null) {
+                connection.send(new Protocol.Message(Protocol.LIST_FILES));
+                Protocol.Message reply = connection.expectOk();
+                int count = reply.getInt();
+                stored = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    stored.add(reply.getString());
+                }
+                Collections.sort(stored);
+            }
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            for (String name : stored) {
+                if (matcher.matches(Paths.get(name))) {
+                    names.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    public static boolean isPattern(String name) {
+        return name.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    // "layout" null: disposition par défaut du serveur.
+    // Le lot k+1 est écrit avant de lire la réponse du lot k: cette réponse, un seul message court, tient dans
+    // les tampons de la connexion et ne peut pas bloquer le serveur pendant qu'il attend le lot suivant.
+    public static Map<String, String> upload(Protocol.Connection connection, List<Path> files, String layout)
+            throws IOException {
+        List<List<Path>> batches = split(files);
+        Map<String, String> results = new LinkedHashMap<>();
+        Map<String, String> localErrors = new HashMap<>();
+        for (int k = 0; k <= batches.size(); k++) {
+            if (k < batches.size()) {
+                sendBatch(connection, batches.get(k), layout, localErrors);
+            }
+            if (k > 0) {
+                List<Path> batch = batches.get(k - 1);
+                Protocol.Message reply = connection.expectOk();
+                int count = reply.getInt();
+                for (int i = 0; i < count; i++) {
+                    String fileName = batch.get(i).getFileName().toString();
+                    String error = reply.getString();
+                    // L'erreur de lecture locale explique mieux l'échec que l'abandon constaté par le serveur
+                    error = localErrors.getOrDefault(fileName, error);
+                    results.put(fileName, error.isEmpty() ? null : error);
+                }
+            }
+        }
+        return results;
+    }
+
+    private static void sendBatch(Protocol.Connection connection, List<Path> batch, String layout,
+                                  Map<String, String> localErrors) throws IOException {
+        List<Long> sizes = new ArrayList<>(batch.size());
+        Protocol.Message request = new Protocol.Message(Protocol.UPLOAD_BATCH)
+                .putInt(batch.size()).putString(layout != null ? layout : "");
+        for (Path file : batch) {
+            long size;
+            try {
+                size = Files.size(file);
+            } catch (IOException e) {
+                // Taille invalide: le serveur écarte le fichier sans lire son contenu, abandonné ci-dessous
+                size = -1;
+            }
+            sizes.add(size);
+            request.putString(file.getFileName().toString()).putLong(size);
+        }
+        request.writeTo(connection.out());
+        for (int i = 0; i < batch.size(); i++) {
+            String error = sendContent(connection, batch.get(i), sizes.get(i));
+            if (error != null) {
+                localErrors.put(batch.get(i).getFileName().toString(), error);
+            }
+        }
+        connection.out().flush();
+    }
+
+    // Exactement "size" octets, la taille annoncée. Un fichier illisible ou raccourci depuis est abandonné
+    // (ChunkedOutputStream.abort): le serveur l'écarte et passe au suivant. Renvoie l'erreur locale, null sinon.
+    private static String sendContent(Protocol.Connection connection, Path file, long size) throws IOException {
+        ChunkedOutputStream out = new ChunkedOutputStream(connection.out());
+        if (size < 0) {
+            out.abort();
+            return "taille illisible";
+        }
+        InputStream in;
+        try {
+            in = Files.newInputStream(file);
+        } catch (IOException e) {
+            out.abort();
+            return "lecture impossible: " + e.getMessage();
+        }
+        byte[] buffer = new byte[ChunkedOutputStream.CHUNK_SIZE];
+        try (in) {
+            long remaining = size;
+            while (remaining > 0) {
+                int n;
+                try {
+                    n = in.readNBytes(buffer, 0, (int) Math.min(buffer.length, remaining));
+                } catch (IOException e) {
+                    out.abort();
+                    return "lecture impossible: " + e.getMessage();
+                }
+                if (n == 0) {
+                    out.abort();
+                    return "fichier modifié pendant l'envoi";
+                }
+                // Une erreur d'écriture concerne la connexion et interrompt toute l'opération
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+        out.finish();
+        return null;
+    }
+
+    // Enregistre chaque fichier sous "directory", en passant par "<fichier>.part", après vérification de son CRC32C.
+    // La requête du lot k+1 n'est écrite qu'une fois la première réponse du lot k reçue: le serveur a alors lu
+    // la requête k, et seule la requête k+1, un message court, peut attendre pendant qu'il transmet les contenus.
+    public static Map<String, String> download(Protocol.Connection connection, List<String> fileNames, Path directory)
+            throws IOException {
+        List<List<String>> batches = split(fileNames);
+        if (!batches.isEmpty()) {
+            sendNames(connection, Protocol.DOWNLOAD_BATCH, batches.get(0));
+        }
+        Map<String, String> results = new LinkedHashMap<>();
+        for (int k = 0; k < batches.size(); k++) {
+            List<String> batch = batches.get(k);
+            for (int i = 0; i < batch.size(); i++) {
+                String fileName = batch.get(i);
+                Protocol.Message reply;
+                try {
+                    reply = connection.expectOk();
+                } catch (Protocol.RemoteError e) {
+                    reply = null;
+                    results.put(fileName, e.getMessage());
+                }
+                if (i == 0 && k + 1 < batches.size()) {
+                    sendNames(connection, Protocol.DOWNLOAD_BATCH, batches.get(k + 1));
+                }
+                if (reply != null) {
+                    results.put(fileName, receiveFile(connection, reply, directory.resolve(fileName)));
+                }
+            }
+        }
+        return results;
+    }
+
+    // Contenu annoncé par "reply"; renvoie l'erreur du fichier, null s'il a été enregistré
+    private static String receiveFile(Protocol.Connection connection, Protocol.Message reply, Path target)
+            throws IOException {
+        long fileSize = reply.getLong();
+        long checksum = reply.getLong();
+        Path partial = Paths.get(target + ".part");
+        CRC32C crc = new CRC32C();
+        ChunkedInputStream content = new ChunkedInputStream(connection.in());
+        long received;
+        try (OutputStream fileOut = new CheckedOutputStream(Files.newOutputStream(partial), crc)) {
+            received = content.transferTo(fileOut);
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            // Lecture abandonnée par le serveur: la connexion reste alignée sur le fichier suivant
+            if (!content.isAborted()) {
+                throw e;
+            }
+            return "lecture interrompue sur le serveur";
+        }
+        // Sans somme de contrôle (fichier stocké avant son ajout), seule la taille est vérifiée
+        if (received != fileSize || (checksum >= 0 && crc.getValue() != checksum)) {
+            Files.delete(partial);
+            return "Somme de contrôle incorrecte";
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        return null;
+    }
+
+    // Comme pour l'envoi, le lot k+1 part avant la lecture de la réponse du lot k
+    public static Map<String, String> delete(Protocol.Connection connection, List<String> fileNames) throws IOException {
+        List<List<String>> batches = split(fileNames);
+        Map<String, String> results = new LinkedHashMap<>();
+        for (int k = 0; k <= batches.size(); k++) {
+            if (k < batches.size()) {
+                sendNames(connection, Protocol.DELETE_BATCH, batches.get(k));
+            }
+            if (k > 0) {
+                List<String> batch = batches.get(k - 1);
+                Protocol.Message reply = connection.expectOk();
+                int count = reply.getInt();
+                for (int i = 0; i < count; i++) {
+                    String error = reply.getString();
+                    results.put(batch.get(i), error.isEmpty() ? null : error);
+                }
+            }
+        }
+        return results;
+    }
+
+    private static void sendNames(Protocol.Connection connection, byte opcode, List<String> names) throws IOException {
+        Protocol.Message request = new Protocol.Message(opcode).putInt(names.size());
+        names.forEach(request::putString);
+        connection.send(request);
+    }
+
+    // Résumé affiché à l'utilisateur: le décompte puis une ligne par échec
+    public static String summary(String action, Map<String, String> results) {
+        StringBuilder summary = new StringBuilder();
+        long failed = results.values().stream().filter(Objects::nonNull).count();
+        summary.append(results.size() - failed).append("/").append(results.size()).append(" fichier(s) ").append(action);
+        results.forEach((fileName, error) -> {
+            if (error != null) {
+                summary.append("\n  ").append(fileName).append(": ").append(error);
+            }
+        });
+        return summary.toString();
+    }
+
+    private static <T> List<List<T>> split(List<T> items) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += BATCH_SIZE) {
+            batches.add(items.subList(i, Math.min(items.size(), i + BATCH_SIZE)));
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// Journal en ajout seul des modifications du catalogue.
+// Enregistrement: [int longueur][int CRC32][byte type][données], le CRC couvrant le type et les données.
+// Les écritures concurrentes sont regroupées: un seul fsync rend durables tous les enregistrements en attente.
+public class CatalogLog implements Closeable {
+    public static final byte PUT = 1;
+    // Pierre tombale: le fichier est supprimé, l'enregistrement disparaît à la prochaine compaction
+    public static final byte DELETE = 2;
+    // PUT portant plusieurs répliques par partition
+    public static final byte PUT_REPLICAS = 3;
+    // PUT portant aussi les attributs du fichier (disposition, ...)
+    public static final byte PUT_ENTRY = 4;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    public interface RecordHandler {
+        void apply(byte type, DataInputStream payload) throws IOException;
+    }
+
+    private final Path file;
+    private final Object flushLock = new Object();
+    private FileChannel channel;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSeq;
+    // Dernier enregistrement pris dans un lot, écrit ou en échec
+    private long takenSeq;
+    private volatile long durableSeq;
+    // Lots en échec, premier numéro -> dernier: leurs appelants ont reçu une erreur et ont annulé leur modification
+    private final TreeMap<Long, Long> failedSeqs = new TreeMap<>();
+    // Fin de la partie rendue durable: une écriture en échec est coupée à cette position
+    private long durableLength;
+    // Journal inutilisable (écriture en échec qui n'a pas pu être annulée) jusqu'à sa réouverture
+    private IOException failure;
+    private long size;
+
+    public CatalogLog(Path file) {
+        this.file = file;
+    }
+
+    // Rejoue les enregistrements valides dans l'ordre; une fin tronquée ou corrompue (arrêt brutal pendant
+    // une écriture) arrête la lecture. Renvoie la longueur de la partie valide.
+    public static long replay(Path file, RecordHandler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] record;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 1 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum(record) != checksum) {
+                    break;
+                }
+                handler.apply(record[0], new DataInputStream(new ByteArrayInputStream(record, 1, length - 1)));
+                valid += HEADER_SIZE + length;
+            }
+        }
+        return valid;
+    }
+
+    // Ouvre le journal en écriture en coupant ce qui suit la partie valide
+    public synchronized void open(long validLength) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        durableLength = validLength;
+        failure = null;
+        size = validLength;
+    }
+
+    // Ajoute l'enregistrement en mémoire et renvoie son numéro, à passer à sync() pour attendre sa durabilité
+    public synchronized long append(byte type, byte[] payload) {
+        byte[] record = new byte[payload.length + 1];
+        record[0] = type;
+        System.arraycopy(payload, 0, record, 1, payload.length);
+        DataOutputStream out = new DataOutputStream(pending);
+        try {
+            out.writeInt(record.length);
+            out.writeInt(checksum(record));
+            out.write(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        size += HEADER_SIZE + record.length;
+        return ++appendedSeq;
+    }
+
+    // Le premier appelant écrit et synchronise tout ce qui est en attente; ceux qui attendaient derrière lui
+    // trouvent leur enregistrement déjà durable. En cas d'échec, le lot est abandonné: chacun de ses appelants
+    // reçoit l'erreur et annule sa modification, aucun de ses enregistrements n'est réécrit plus tard.
+    public void sync(long seq) throws IOException {
+        synchronized (flushLock) {
+            Map.Entry<Long, Long> failed = failedSeqs.floorEntry(seq);
+            if (failed != null && seq <= failed.getValue()) {
+                throw new IOException("Écriture du journal du catalogue en échec");
+            }
+            if (durableSeq >= seq) {
+                return;
+            }
+            if (failure != null) {
+                throw new IOException("Journal du catalogue inutilisable depuis une écriture en échec", failure);
+            }
+            byte[] batch;
+            long first = takenSeq + 1;
+            long target;
+            synchronized (this) {
+                batch = pending.toByteArray();
+                pending.reset();
+                target = appendedSeq;
+            }
+            takenSeq = target;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                discard(first, target, batch.length, e);
+                throw e;
+            }
+            durableLength += batch.length;
+            durableSeq = target;
+        }
+    }
+
+    // Coupe l'écriture partielle (replay s'arrêterait sur elle, et un lot suivant serait perdu derrière elle)
+    private void discard(long first, long last, int length, IOException cause) {
+        failedSeqs.put(first, last);
+        synchronized (this) {
+            size -= length;
+        }
+        try {
+            channel.truncate(durableLength);
+            channel.position(durableLength);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    // Rend durable le journal courant, le renomme en "rotated" et repart d'un journal vide.
+    // L'appelant doit empêcher tout ajout pendant l'opération.
+    public void rotate(Path rotated) throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                syncAll();
+                channel.close();
+                Files.move(file, rotated, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                open(0);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            syncAll();
+            channel.close();
+        }
+    }
+
+    // Appelé sous flushLock: tout lot déjà pris a été écrit ou abandonné, seuls les ajouts suivants restent à écrire
+    private void syncAll() throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = appendedSeq;
+        }
+        if (seq > takenSeq) {
+            sync(seq);
+        }
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.*;
+
+// Lecture d'un flux produit par ChunkedOutputStream
+public class ChunkedInputStream extends InputStream {
+    private final DataInputStream in;
+    private int remaining;
+    private boolean endOfStream;
+    private boolean aborted;
+
+    public ChunkedInputStream(InputStream source) {
+        this.in = new DataInputStream(source);
+    }
+
+    private boolean nextChunk() throws IOException {
+        while (remaining == 0 && !endOfStream) {
+            int size = in.readInt();
+            if (size == ChunkedOutputStream.END_OF_STREAM) {
+                endOfStream = true;
+            } else if (size == ChunkedOutputStream.ABORTED) {
+                endOfStream = true;
+                aborted = true;
+                throw new IOException("Transfert interrompu par l'émetteur");
+            } else if (size < 0) {
+                throw new IOException("Bloc invalide: " + size);
+            } else {
+                remaining = size;
+            }
+        }
+        return !endOfStream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) return -1;
+        remaining--;
+        return in.readUnsignedByte();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!nextChunk()) return -1;
+        int n = in.read(b, off, Math.min(len, remaining));
+        if (n < 0) throw new EOFException("Flux interrompu au milieu d'un bloc");
+        remaining -= n;
+        return n;
+    }
+
+    // Vrai si l'émetteur a abandonné le transfert: le flux sous-jacent reste aligné sur le message suivant
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    // Consomme la fin du flux pour que la connexion reste alignée sur le message suivant
+    // (un abandon de l'émetteur termine aussi le flux)
+    public void drain() throws IOException {
+        byte[] skip = new byte[8192];
+        try {
+            while (read(skip, 0, skip.length) >= 0) {
+                // ignoré
+            }
+        } catch (IOException e) {
+            if (!aborted) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+    }
+}
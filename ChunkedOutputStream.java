@@ -0,0 +1,123 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Flux découpé en blocs bornés: [int taille][octets]... terminé par 0 (fin) ou -1 (abandon).
+// La mémoire utilisée reste constante quelle que soit la taille du fichier transféré.
+public class ChunkedOutputStream extends OutputStream {
+    public static final int CHUNK_SIZE = 64 * 1024;
+    // Blocs plus grands pour l'envoi direct depuis un fichier: seul l'en-tête passe par la mémoire
+    static final int ZERO_COPY_CHUNK_SIZE = 4 * 1024 * 1024;
+    static final int END_OF_STREAM = 0;
+    static final int ABORTED = -1;
+
+    private final OutputStream target;
+    private final DataOutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean finished;
+
+    public ChunkedOutputStream(OutputStream target) {
+        this(target, CHUNK_SIZE);
+    }
+
+    public ChunkedOutputStream(OutputStream target, int chunkSize) {
+        this.target = target;
+        this.out = new DataOutputStream(target);
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (count > 0) {
+            out.writeInt(count);
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeChunk();
+        target.flush();
+    }
+
+    // Envoie "length" octets du fichier à partir de "position" sans les copier dans le tas:
+    // l'en-tête de chaque bloc est écrit par le flux, le contenu par FileChannel.transferTo (sendfile)
+    public void transferFrom(FileChannel file, long position, long length, WritableByteChannel channel) throws IOException {
+        flush();
+        while (length > 0) {
+            int size = (int) Math.min(length, ZERO_COPY_CHUNK_SIZE);
+            out.writeInt(size);
+            target.flush();
+            long sent = 0;
+            while (sent < size) {
+                long n = file.transferTo(position + sent, size - sent, channel);
+                if (n <= 0) {
+                    throw new EOFException("Fichier tronqué pendant l'envoi");
+                }
+                sent += n;
+            }
+            position += size;
+            length -= size;
+        }
+    }
+
+    // Envoie le reste du tampon en un bloc, directement sur le canal: un tampon direct ne passe pas par le tas
+    public void write(ByteBuffer data, WritableByteChannel channel) throws IOException {
+        flush();
+        if (!data.hasRemaining()) {
+            return;
+        }
+        out.writeInt(data.remaining());
+        target.flush();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    // Termine le flux sans fermer le flux sous-jacent (la socket reste utilisable)
+    public void finish() throws IOException {
+        if (finished) return;
+        writeChunk();
+        out.writeInt(END_OF_STREAM);
+        target.flush();
+        finished = true;
+    }
+
+    // Signale au récepteur que le transfert a échoué en cours de route
+    public void abort() throws IOException {
+        if (finished) return;
+        count = 0;
+        out.writeInt(ABORTED);
+        target.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
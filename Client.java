@@ -3,7 +3,9 @@ import java.awt.*;
 import java.io.*;
 import java.net.*;
 import java.nio.file.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class Client extends JFrame {
     private final JList<String> fileList;
@@ -34,7 +36,7 @@ public class Client extends JFrame {
 
         JPanel listPanel = new JPanel(new BorderLayout());
         listPanel.setBorder(BorderFactory.createTitledBorder("Fichiers disponibles"));
-        fileList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        fileList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         listPanel.add(new JScrollPane(fileList), BorderLayout.CENTER);
 
         JPanel logPanel = new JPanel(new BorderLayout());
@@ -77,38 +79,35 @@ public class Client extends JFrame {
         });
     }
 
+    private Protocol.Connection connect() throws IOException {
+        return Protocol.connect(serverIp, serverPort, 5000);
+    }
+
     private void uploadFile() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Sélectionner un fichier à envoyer");
+        fileChooser.setDialogTitle("Sélectionner les fichiers à envoyer");
+        fileChooser.setMultiSelectionEnabled(true);
 
         int result = fileChooser.showOpenDialog(this);
-        if (result == JFileChooser.APPROVE_OPTION) {
+        if (result == JFileChooser.APPROVE_OPTION && fileChooser.getSelectedFiles().length > 1) {
+            List<Path> files = new ArrayList<>();
+            for (File file : fileChooser.getSelectedFiles()) {
+                files.add(file.toPath());
+            }
+            runBatch("Erreur d'envoi", connection -> BatchTransfer.summary("envoyé(s)",
+                    BatchTransfer.upload(connection, files, null)));
+        } else if (result == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            try (Socket socket = new Socket(serverIp, serverPort);
-                 ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                 ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-
-                out.writeObject("CLIENT");
-                out.writeObject("UPLOAD");
-                out.writeObject(file.getName());
-                out.writeObject(file.length());
-
-                byte[] fileData = Files.readAllBytes(file.toPath());
-                out.writeObject(fileData);
-
-                log("Fichier envoyé avec succès: " + file.getName());
+            runTransfer("Erreur d'envoi", () -> {
+                ResumableTransfer.upload(this::connect, file.toPath(), file.getName(), null, this::log);
                 refreshFileList();
-            } catch (IOException e) {
-                log("Erreur lors de l'envoi: " + e.getMessage());
-                JOptionPane.showMessageDialog(this,
-                        "Erreur lors de l'envoi du fichier: " + e.getMessage(),
-                        "Erreur d'envoi",
-                        JOptionPane.ERROR_MESSAGE);
-            }
+                return "Fichier envoyé avec succès: " + file.getName();
+            });
         }
     }
 
     private void downloadSelectedFile() {
+        List<String> selectedFiles = fileList.getSelectedValuesList();
         String selectedFile = fileList.getSelectedValue();
         if (selectedFile == null) {
             JOptionPane.showMessageDialog(this,
@@ -117,6 +116,17 @@ public class Client extends JFrame {
                     JOptionPane.WARNING_MESSAGE);
             return;
         }
+        if (selectedFiles.size() > 1) {
+            JFileChooser directoryChooser = new JFileChooser();
+            directoryChooser.setDialogTitle("Dossier de destination");
+            directoryChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (directoryChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                Path directory = directoryChooser.getSelectedFile().toPath();
+                runBatch("Erreur de téléchargement", connection -> BatchTransfer.summary("téléchargé(s)",
+                        BatchTransfer.download(connection, selectedFiles, directory)));
+            }
+            return;
+        }
 
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Enregistrer le fichier");
@@ -124,32 +134,16 @@ public class Client extends JFrame {
 
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            try (Socket socket = new Socket(serverIp, serverPort);
-                 ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                 ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-
-                out.writeObject("CLIENT");
-                out.writeObject("DOWNLOAD");
-                out.writeObject(selectedFile);
-
-                byte[] fileData = (byte[]) in.readObject();
-                if (fileData != null) {
-                    Files.write(fileChooser.getSelectedFile().toPath(), fileData);
-                    log("Fichier téléchargé avec succès: " + selectedFile);
-                } else {
-                    throw new IOException("Le fichier n'a pas pu être récupéré du serveur");
-                }
-            } catch (Exception e) {
-                log("Erreur lors du téléchargement: " + e.getMessage());
-                JOptionPane.showMessageDialog(this,
-                        "Erreur lors du téléchargement: " + e.getMessage(),
-                        "Erreur de téléchargement",
-                        JOptionPane.ERROR_MESSAGE);
-            }
+            Path target = fileChooser.getSelectedFile().toPath();
+            runTransfer("Erreur de téléchargement", () -> {
+                ResumableTransfer.download(this::connect, selectedFile, target, this::log);
+                return "Fichier téléchargé avec succès: " + selectedFile;
+            });
         }
     }
 
     private void deleteSelectedFile() {
+        List<String> selectedFiles = fileList.getSelectedValuesList();
         String selectedFile = fileList.getSelectedValue();
         if (selectedFile == null) {
             JOptionPane.showMessageDialog(this,
@@ -158,6 +152,17 @@ public class Client extends JFrame {
                     JOptionPane.WARNING_MESSAGE);
             return;
         }
+        if (selectedFiles.size() > 1) {
+            int confirm = JOptionPane.showConfirmDialog(this,
+                    "Êtes-vous sûr de vouloir supprimer ces " + selectedFiles.size() + " fichiers ?",
+                    "Confirmation de suppression",
+                    JOptionPane.YES_NO_OPTION);
+            if (confirm == JOptionPane.YES_OPTION) {
+                runBatch("Erreur de suppression", connection -> BatchTransfer.summary("supprimé(s)",
+                        BatchTransfer.delete(connection, selectedFiles)));
+            }
+            return;
+        }
 
         int confirm = JOptionPane.showConfirmDialog(this,
                 "Êtes-vous sûr de vouloir supprimer le fichier: " + selectedFile + " ?",
@@ -165,54 +170,89 @@ public class Client extends JFrame {
                 JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            try (Socket socket = new Socket(serverIp, serverPort);
-                 ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                 ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-
-                out.writeObject("CLIENT");
-                out.writeObject("DELETE");
-                out.writeObject(selectedFile);
-
-                String response = (String) in.readObject();
-                if ("SUCCESS".equals(response)) {
-                    log("Fichier supprimé avec succès: " + selectedFile);
-                    refreshFileList();
-                } else {
-                    throw new IOException("Erreur du serveur lors de la suppression du fichier");
+            runTransfer("Erreur de suppression", () -> {
+                try (Protocol.Connection connection = connect()) {
+                    connection.send(new Protocol.Message(Protocol.DELETE).putString(selectedFile));
+                    connection.expectOk();
+                    refreshFileList(connection);
                 }
-            } catch (Exception e) {
-                log("Erreur lors de la suppression: " + e.getMessage());
-                JOptionPane.showMessageDialog(this,
-                        "Erreur lors de la suppression: " + e.getMessage(),
-                        "Erreur de suppression",
-                        JOptionPane.ERROR_MESSAGE);
-            }
+                return "Fichier supprimé avec succès: " + selectedFile;
+            });
         }
     }
 
-    private void refreshFileList() {
-        try (Socket socket = new Socket(serverIp, serverPort);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
+    private interface BatchOperation {
+        String run(Protocol.Connection connection) throws IOException;
+    }
 
-            out.writeObject("CLIENT");
-            out.writeObject("LIST_FILES");
+    // Opération sur plusieurs fichiers puis rafraîchissement de la liste, sur une seule connexion
+    private void runBatch(String errorTitle, BatchOperation operation) {
+        runTransfer(errorTitle, () -> {
+            try (Protocol.Connection connection = connect()) {
+                String summary = operation.run(connection);
+                refreshFileList(connection);
+                return summary;
+            }
+        });
+    }
 
-            @SuppressWarnings("unchecked")
-            List<String> files = (List<String>) in.readObject();
+    private interface Transfer {
+        // Message journalisé en cas de succès (null: aucun)
+        String run() throws IOException;
+    }
 
-            SwingUtilities.invokeLater(() -> {
-                listModel.clear();
-                files.forEach(listModel::addElement);
-                log("Liste des fichiers mise à jour");
-            });
-        } catch (Exception e) {
-            log("Erreur lors du rafraîchissement de la liste: " + e.getMessage());
-            JOptionPane.showMessageDialog(this,
-                    "Impossible de récupérer la liste des fichiers: " + e.getMessage(),
-                    "Erreur de connexion",
-                    JOptionPane.ERROR_MESSAGE);
+    // Échanges avec le serveur hors de l'EDT: la fenêtre reste réactive pendant un transfert
+    // et pendant les pauses entre deux essais de ResumableTransfer
+    private void runTransfer(String errorTitle, Transfer transfer) {
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws IOException {
+                return transfer.run();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    String message = get();
+                    if (message != null) {
+                        log(message);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    log(errorTitle + ": " + e.getCause().getMessage());
+                    JOptionPane.showMessageDialog(Client.this,
+                            errorTitle + ": " + e.getCause().getMessage(),
+                            errorTitle,
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void refreshFileList() {
+        runTransfer("Impossible de récupérer la liste des fichiers", () -> {
+            try (Protocol.Connection connection = connect()) {
+                refreshFileList(connection);
+            }
+            return null;
+        });
+    }
+
+    private void refreshFileList(Protocol.Connection connection) throws IOException {
+        connection.send(new Protocol.Message(Protocol.LIST_FILES));
+        Protocol.Message reply = connection.expectOk();
+        int count = reply.getInt();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(reply.getString());
         }
+
+        SwingUtilities.invokeLater(() -> {
+            listModel.clear();
+            files.forEach(listModel::addElement);
+            log("Liste des fichiers mise à jour");
+        });
     }
 
     public static void main(String[] args) {
@@ -44,27 +44,40 @@ public class ClientConsole {
                     
                 case "put":
                     if (parts.length < 2) {
-                        System.out.println("Usage: put <fichier>;");
+                        System.out.println("Usage: put <fichier|motif> [replication|dedup|rs-k-m];");
+                    } else if (BatchTransfer.isPattern(parts[1])) {
+                        uploadFiles(parts[1], parts.length > 2 ? parts[2] : null);
                     } else {
-                        uploadFile(parts[1]);
+                        uploadFile(parts[1], parts.length > 2 ? parts[2] : null);
                     }
                     break;
                     
                 case "get":
                     if (parts.length < 2) {
-                        System.out.println("Usage: get <fichier>;");
-                    } else {
+                        System.out.println("Usage: get <fichier> [début [longueur]];");
+                    } else if (parts.length == 2 && !BatchTransfer.isPattern(parts[1])) {
                         downloadFile(parts[1]);
+                    } else if (parts.length == 2 || !parts[2].matches("\\d+")) {
+                        downloadFiles(Arrays.asList(parts).subList(1, parts.length));
+                    } else {
+                        try {
+                            downloadRange(parts[1], Long.parseLong(parts[2]),
+                                    parts.length > 3 ? Long.parseLong(parts[3]) : -1);
+                        } catch (NumberFormatException e) {
+                            System.out.println("Usage: get <fichier> [début [longueur]];");
+                        }
                     }
                     break;
                     
                 case "rm":
                     if (parts.length < 2) {
-                        System.out.println("Usage: rm <fichier>;");
-                    } else {
+                        System.out.println("Usage: rm <fichier>...;");
+                    } else if (parts.length == 2 && !BatchTransfer.isPattern(parts[1])) {
                         if (deleteFile(parts[1])) {
                             System.out.println("Fichier supprimé avec succès: " + parts[1]);
                         }
+                    } else {
+                        deleteFiles(Arrays.asList(parts).subList(1, parts.length));
                     }
                     break;
                     
@@ -113,16 +126,19 @@ public class ClientConsole {
         }
     }
 
+    private static Protocol.Connection connect() throws IOException {
+        return Protocol.connect(SERVER_IP, SERVER_PORT, 5000);
+    }
+
     private static void listServerFiles() {
-        try (Socket socket = new Socket(SERVER_IP, SERVER_PORT);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            
-            out.writeObject("CLIENT");
-            out.writeObject("LIST_FILES");
-            
-            @SuppressWarnings("unchecked")
-            List<String> files = (List<String>) in.readObject();
+        try (Protocol.Connection connection = connect()) {
+            connection.send(new Protocol.Message(Protocol.LIST_FILES));
+            Protocol.Message reply = connection.expectOk();
+            int count = reply.getInt();
+            List<String> files = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                files.add(reply.getString());
+            }
             if (files.isEmpty()) {
                 System.out.println("Aucun fichier sur le serveur");
             } else {
@@ -143,87 +159,120 @@ public class ClientConsole {
     }
     
     
-    private static void uploadFile(String fileName) {
+    // "layout": disposition demandée au serveur (null: celle du serveur), par exemple rs-4-2 pour 4 fragments
+    // de données et 2 de parité
+    private static void uploadFile(String fileName, String layout) {
         Path filePath = Paths.get(currentDirectory, fileName);
         if (!Files.exists(filePath)) {
             System.out.println("Le fichier n'existe pas: " + fileName);
             return;
         }
         
-        try (Socket socket = new Socket(SERVER_IP, SERVER_PORT);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            
-            out.writeObject("CLIENT");
-            out.writeObject("UPLOAD");
-            out.writeObject(fileName);
-            out.writeObject(Files.size(filePath));
-            
-            byte[] fileData = Files.readAllBytes(filePath);
-            out.writeObject(fileData);
-            
+        try {
+            ResumableTransfer.upload(ClientConsole::connect, filePath, fileName, layout, System.out::println);
             System.out.println("Fichier envoyé avec succès: " + fileName);
         } catch (IOException e) {
             System.out.println("Erreur lors de l'envoi du fichier: " + e.getMessage());
         }
     }
     
-    private static void downloadFile(String fileName) {
-        try (Socket socket = new Socket(SERVER_IP, SERVER_PORT);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            
-            out.writeObject("CLIENT");
-            out.writeObject("DOWNLOAD");
-            out.writeObject(fileName);
-            
-            byte[] fileData = (byte[]) in.readObject();
-            if (fileData != null) {
-                Path downloadPath = Paths.get(DOWNLOAD_DIR, fileName);
-                Files.write(downloadPath, fileData);
-                System.out.println("Fichier téléchargé avec succès dans: " + downloadPath);
-            } else {
-                System.out.println("Le fichier n'a pas pu être récupéré du serveur");
+    // Tous les fichiers du répertoire courant qui correspondent au motif, sur une seule connexion
+    private static void uploadFiles(String pattern, String layout) {
+        try {
+            List<Path> files = BatchTransfer.matchLocal(Paths.get(currentDirectory), pattern);
+            if (files.isEmpty()) {
+                System.out.println("Aucun fichier ne correspond à: " + pattern);
+                return;
             }
-        } catch (Exception e) {
+            try (Protocol.Connection connection = connect()) {
+                System.out.println(BatchTransfer.summary("envoyé(s)", BatchTransfer.upload(connection, files, layout)));
+            }
+        } catch (IOException e) {
+            System.out.println("Erreur lors de l'envoi groupé: " + e.getMessage());
+        }
+    }
+
+    private static void downloadFile(String fileName) {
+        Path downloadPath = Paths.get(DOWNLOAD_DIR, fileName);
+        try {
+            ResumableTransfer.download(ClientConsole::connect, fileName, downloadPath, System.out::println);
+            System.out.println("Fichier téléchargé avec succès dans: " + downloadPath);
+        } catch (Protocol.RemoteError e) {
+            System.out.println("Le fichier n'a pas pu être récupéré du serveur: " + e.getMessage());
+        } catch (IOException e) {
             System.out.println("Erreur lors du téléchargement: " + e.getMessage());
         }
     }
     
     
-    private static boolean deleteFile(String fileName) {
-        Socket socket = null;
-        ObjectOutputStream out = null;
-        ObjectInputStream in = null;
-        boolean success = false;
-        
-        try {
-            socket = new Socket(SERVER_IP, SERVER_PORT);
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
-            
-            out.writeObject("CLIENT");
-            out.writeObject("DELETE");
-            out.writeObject(fileName);
-            
-            String response = (String) in.readObject();
-            success = "SUCCESS".equals(response);
-            
-            if (!success) {
-                System.out.println("Erreur lors de la suppression du fichier");
-            }
-        } catch (Exception e) {
-            System.out.println("Erreur lors de la suppression: " + e.getMessage());
-        } finally {
+    // Enregistre les octets [début, début + longueur) sous "<fichier>.<début>-<fin>"; sans longueur: jusqu'à la fin
+    private static void downloadRange(String fileName, long offset, long length) {
+        try (Protocol.Connection connection = connect()) {
+            connection.send(new Protocol.Message(Protocol.DOWNLOAD_RANGE)
+                    .putString(fileName).putLong(offset).putLong(length));
+            long count;
             try {
-                if (in != null) in.close();
-                if (out != null) out.close();
-                if (socket != null) socket.close();
+                count = connection.expectOk().getLong();
+            } catch (Protocol.RemoteError e) {
+                System.out.println("La plage n'a pas pu être récupérée du serveur: " + e.getMessage());
+                return;
+            }
+
+            Path downloadPath = Paths.get(DOWNLOAD_DIR, fileName + "." + offset + "-" + (offset + count));
+            try (OutputStream fileOut = Files.newOutputStream(downloadPath)) {
+                long received = new ChunkedInputStream(connection.in()).transferTo(fileOut);
+                if (received != count) {
+                    throw new IOException("Plage incomplète: " + received + "/" + count + " octets");
+                }
             } catch (IOException e) {
-                System.out.println("Erreur lors de la fermeture des connexions: " + e.getMessage());
+                Files.deleteIfExists(downloadPath);
+                throw e;
             }
+            System.out.println(count + " octets téléchargés dans: " + downloadPath);
+        } catch (IOException e) {
+            System.out.println("Erreur lors du téléchargement: " + e.getMessage());
+        }
+    }
+
+    // Noms ou motifs ("*.log"), comparés à la liste des fichiers du serveur
+    private static void downloadFiles(List<String> patterns) {
+        try (Protocol.Connection connection = connect()) {
+            List<String> fileNames = BatchTransfer.matchRemote(connection, patterns);
+            if (fileNames.isEmpty()) {
+                System.out.println("Aucun fichier du serveur ne correspond à: " + String.join(" ", patterns));
+                return;
+            }
+            Map<String, String> results = BatchTransfer.download(connection, fileNames, Paths.get(DOWNLOAD_DIR));
+            System.out.println(BatchTransfer.summary("téléchargé(s) dans " + DOWNLOAD_DIR, results));
+        } catch (IOException e) {
+            System.out.println("Erreur lors du téléchargement groupé: " + e.getMessage());
+        }
+    }
+
+    private static void deleteFiles(List<String> patterns) {
+        try (Protocol.Connection connection = connect()) {
+            List<String> fileNames = BatchTransfer.matchRemote(connection, patterns);
+            if (fileNames.isEmpty()) {
+                System.out.println("Aucun fichier du serveur ne correspond à: " + String.join(" ", patterns));
+                return;
+            }
+            System.out.println(BatchTransfer.summary("supprimé(s)", BatchTransfer.delete(connection, fileNames)));
+        } catch (IOException e) {
+            System.out.println("Erreur lors de la suppression groupée: " + e.getMessage());
+        }
+    }
+
+    private static boolean deleteFile(String fileName) {
+        try (Protocol.Connection connection = connect()) {
+            connection.send(new Protocol.Message(Protocol.DELETE).putString(fileName));
+            connection.expectOk();
+            return true;
+        } catch (Protocol.RemoteError e) {
+            System.out.println("Erreur lors de la suppression du fichier: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Erreur lors de la suppression: " + e.getMessage());
         }
-        return success;
+        return false;
     }
     
     private static void showHelp() {
@@ -231,8 +280,14 @@ public class ClientConsole {
         System.out.println("  liste;            - Affiche le contenu du répertoire courant");
         System.out.println("  liste stockage;   - Affiche les fichiers stockés sur le serveur");
         System.out.println("  put <fichier>;    - Envoie un fichier vers le serveur");
+        System.out.println("  put <fichier> rs-k-m; - Envoie un fichier en k fragments de données + m de parité");
+        System.out.println("  put <fichier> dedup; - Envoie un fichier en blocs dédupliqués entre fichiers");
+        System.out.println("  put <motif>;      - Envoie tous les fichiers correspondants (ex: put *.log;)");
         System.out.println("  get <fichier>;    - Télécharge un fichier du serveur");
+        System.out.println("  get <fichier> début [longueur]; - Télécharge une plage d'octets du fichier");
+        System.out.println("  get <fichier|motif>...; - Télécharge plusieurs fichiers en une fois");
         System.out.println("  rm <fichier>;     - Supprime un fichier du serveur");
+        System.out.println("  rm <fichier|motif>...; - Supprime plusieurs fichiers en une fois");
         System.out.println("  cd <répertoire>;  - Change de répertoire");
         System.out.println("  cd ..;            - Retourne au répertoire parent");
         System.out.println("  help;             - Affiche cette aide");
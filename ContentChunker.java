@@ -0,0 +1,91 @@
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.SplittableRandom;
+
+// Découpage d'un flux en blocs définis par leur contenu (hachage roulant "gear", à la FastCDC):
+// une coupure tombe là où l'empreinte des derniers octets vérifie le masque, si bien qu'une insertion
+// ne déplace que les blocs voisins et que les contenus identiques produisent les mêmes blocs.
+public class ContentChunker {
+    static final int MIN_CHUNK_SIZE = 128 * 1024;
+    static final int MAX_CHUNK_SIZE = 2 * 1024 * 1024;
+    // Une coupure tous les 2^19 octets en moyenne au-delà de la taille minimale
+    private static final int AVERAGE_BITS = 19;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x50534653L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream in;
+    private long remaining;
+    private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+    private int buffered;
+
+    // Lit exactement "length" octets de "in"
+    public ContentChunker(InputStream in, long length) {
+        this.in = in;
+        this.remaining = length;
+    }
+
+    // Bloc suivant, ou null à la fin du flux
+    public byte[] next() throws IOException {
+        int wanted = (int) Math.min(buffer.length - buffered, remaining);
+        if (wanted > 0) {
+            int n = in.readNBytes(buffer, buffered, wanted);
+            if (n < wanted) {
+                throw new EOFException("Flux client interrompu avant la fin du fichier");
+            }
+            buffered += n;
+            remaining -= n;
+        }
+        if (buffered == 0) {
+            return null;
+        }
+        int cut = findBoundary(buffer, buffered);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, buffered - cut);
+        buffered -= cut;
+        return chunk;
+    }
+
+    private static int findBoundary(byte[] data, int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return length;
+        }
+        long hash = 0;
+        for (int i = MIN_CHUNK_SIZE; i < length; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            // Bits de poids fort: ils dépendent des 64 derniers octets
+            if ((hash >>> (64 - AVERAGE_BITS)) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    // Nom du bloc sur les secondaires: empreinte SHA-256 et taille, "<hex>-<taille>.chunk"
+    public static String chunkName(byte[] chunk) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(chunk);
+            return HexFormat.of().formatHex(digest) + "-" + chunk.length + ".chunk";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Taille du bloc d'après son nom (ou son chemin sur un secondaire)
+    public static long chunkSize(String chunkPath) {
+        int dash = chunkPath.lastIndexOf('-');
+        int suffix = chunkPath.lastIndexOf(".chunk");
+        if (dash < 0 || suffix < dash) {
+            throw new IllegalArgumentException("Nom de bloc invalide: " + chunkPath);
+        }
+        return Long.parseLong(chunkPath.substring(dash + 1, suffix));
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Disposition d'un fichier en codage d'effacement: "rs-k-m-B", soit k fragments de données,
+// m fragments de parité et des bandes de k blocs de B octets. Le fragment i reçoit le i-ème bloc de chaque bande.
+// La dernière bande, incomplète, utilise des blocs plus courts (complétés par des zéros).
+public class ErasureLayout {
+    public static final String PREFIX = "rs-";
+    // Une bande entière est en mémoire pendant le codage: la taille de bloc reste bornée
+    private static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final Map<String, ReedSolomon> CODERS = new ConcurrentHashMap<>();
+
+    private final int dataShards;
+    private final int parityShards;
+    private final int blockSize;
+
+    public ErasureLayout(int dataShards, int parityShards, int blockSize) {
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Taille de bloc invalide: " + blockSize);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.blockSize = blockSize;
+        getCoder();
+    }
+
+    // Accepte "rs-k-m" (taille de bloc par défaut) ou "rs-k-m-B"; renvoie null pour une autre disposition
+    public static ErasureLayout parse(String layout) {
+        if (layout == null || !layout.startsWith(PREFIX)) {
+            return null;
+        }
+        String[] parts = layout.substring(PREFIX.length()).split("-");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Disposition invalide: " + layout);
+        }
+        try {
+            int blockSize = parts.length == 3 ? Integer.parseInt(parts[2]) : ChunkedOutputStream.CHUNK_SIZE;
+            return new ErasureLayout(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), blockSize);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Disposition invalide: " + layout);
+        }
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    public int getTotalShards() {
+        return dataShards + parityShards;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    // Un fichier est validé dès que k+1 fragments sont écrits (k si m = 0): il supporte encore une perte
+    public int getWriteQuorum() {
+        return Math.min(getTotalShards(), dataShards + 1);
+    }
+
+    public ReedSolomon getCoder() {
+        return CODERS.computeIfAbsent(dataShards + "+" + parityShards,
+                key -> new ReedSolomon(dataShards, parityShards));
+    }
+
+    public long getStripeCount(long fileSize) {
+        long stripeBytes = (long) dataShards * blockSize;
+        return (fileSize + stripeBytes - 1) / stripeBytes;
+    }
+
+    // Octets du fichier portés par la bande "stripe"
+    public long getStripeDataLength(long stripe, long fileSize) {
+        long stripeBytes = (long) dataShards * blockSize;
+        return Math.min(stripeBytes, fileSize - stripe * stripeBytes);
+    }
+
+    // Taille des blocs de la bande "stripe" dans chaque fragment
+    public int getBlockLength(long stripe, long fileSize) {
+        long dataLength = getStripeDataLength(stripe, fileSize);
+        return (int) ((dataLength + dataShards - 1) / dataShards);
+    }
+
+    // Tous les fragments ont la même taille
+    public long getShardSize(long fileSize) {
+        long stripes = getStripeCount(fileSize);
+        return stripes == 0 ? 0 : (stripes - 1) * blockSize + getBlockLength(stripes - 1, fileSize);
+    }
+
+    @Override
+    public String toString() {
+        return PREFIX + dataShards + "-" + parityShards + "-" + blockSize;
+    }
+}
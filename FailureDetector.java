@@ -0,0 +1,71 @@
+// Détecteur de panne "phi accrual": plutôt qu'un délai fixe, il exprime la suspicion
+// phi = -log10(probabilité qu'un battement arrive encore après un tel silence), d'après la moyenne et l'écart type
+// des derniers intervalles observés. phi = 1: une chance sur 10 de se tromper en déclarant le serveur en panne,
+// phi = 8: une sur 10^8. Un échec explicite (connexion refusée, délai dépassé) rend le serveur suspect aussitôt.
+public class FailureDetector {
+    public static final double SUSPICION_THRESHOLD = Double.parseDouble(System.getProperty("mainserver.phiThreshold", "8"));
+    private static final int WINDOW = 100;
+    private static final double MIN_STD_DEVIATION_MS = 100;
+    // Pause tolérée en plus de l'intervalle moyen (GC, disque chargé) avant que la suspicion ne monte
+    private static final double ACCEPTABLE_PAUSE_MS = 1000;
+
+    private final double[] intervals = new double[WINDOW];
+    private int count;
+    private int next;
+    private double sum;
+    private double sumOfSquares;
+    private long lastHeartbeat;
+    private boolean failed;
+
+    // L'enregistrement du serveur compte comme premier battement; les intervalles démarrent autour de l'attendu
+    public FailureDetector(long expectedIntervalMs, long now) {
+        lastHeartbeat = now;
+        record(expectedIntervalMs * 0.75);
+        record(expectedIntervalMs * 1.25);
+    }
+
+    public synchronized void heartbeat(long now) {
+        record(now - lastHeartbeat);
+        lastHeartbeat = now;
+        failed = false;
+    }
+
+    // Jusqu'au prochain battement réussi
+    public synchronized void failure() {
+        failed = true;
+    }
+
+    public synchronized double phi(long now) {
+        if (failed) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mean = sum / count;
+        double stdDeviation = Math.max(MIN_STD_DEVIATION_MS, Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean)));
+        double elapsed = now - lastHeartbeat;
+        // Approximation logistique de la loi normale cumulée
+        double y = (elapsed - mean - ACCEPTABLE_PAUSE_MS) / stdDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return y > 0 ? -Math.log10(e / (1 + e)) : -Math.log10(1 - 1 / (1 + e));
+    }
+
+    public boolean isAvailable(long now) {
+        return phi(now) < SUSPICION_THRESHOLD;
+    }
+
+    public synchronized long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    private void record(double interval) {
+        if (count == WINDOW) {
+            sum -= intervals[next];
+            sumOfSquares -= intervals[next] * intervals[next];
+        } else {
+            count++;
+        }
+        intervals[next] = interval;
+        next = (next + 1) % WINDOW;
+        sum += interval;
+        sumOfSquares += interval * interval;
+    }
+}
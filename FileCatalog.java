@@ -0,0 +1,661 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+// Catalogue des fichiers stockés, interrogé en mémoire.
+// Sur disque: un instantané (storage.txt) et un journal des modifications postérieures (CatalogLog).
+// Une modification coûte un ajout au journal; la compaction réécrit l'instantané en arrière-plan.
+public class FileCatalog {
+    // Attribut "layout": disposition des partitions, REPLICATION, DEDUP ou une ErasureLayout ("rs-k-m-B")
+    public static final String LAYOUT = "layout";
+    public static final String REPLICATION = "replication";
+    // Blocs définis par le contenu (ContentChunker), nommés par leur empreinte et partagés entre fichiers
+    public static final String DEDUP = "dedup";
+    // Attribut "crc32c": somme de contrôle du fichier complet, en hexadécimal, vérifiée par les clients
+    public static final String CHECKSUM = "crc32c";
+    // Attribut "crc32c-parts": CRC32C des octets stockés de chaque partition ("c1/c2/...", vide si inconnu)
+    public static final String PARTITION_CHECKSUMS = "crc32c-parts";
+    // Attribut "sizes": octets du fichier portés par chaque partition ("t1/t2/...") quand le placement les a
+    // pondérées; sans lui, partitions de taille égale (la dernière éventuellement plus courte)
+    public static final String PARTITION_SIZES = "sizes";
+
+    // Un fichier: sa taille, ses attributs et, pour chaque partition, les chemins de ses répliques sur les secondaires.
+    // En codage d'effacement, chaque partition est un fragment; un fragment perdu à l'écriture n'a aucun chemin.
+    public static class Entry {
+        private final String fileName;
+        private final long fileSize;
+        private final List<List<String>> replicas;
+        private final Map<String, String> attributes;
+        private final ErasureLayout erasureLayout;
+        private final PartitionCodec codec;
+        private final long[] storedSizes;
+        private final long[] rawSizes;
+        private final long[] partitionChecksums;
+
+        public Entry(String fileName, long fileSize, List<List<String>> replicas) {
+            this(fileName, fileSize, replicas, Map.of());
+        }
+
+        public Entry(String fileName, long fileSize, List<List<String>> replicas, Map<String, String> attributes) {
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            List<List<String>> copy = new ArrayList<>(replicas.size());
+            for (List<String> partitionReplicas : replicas) {
+                copy.add(List.copyOf(partitionReplicas));
+            }
+            this.replicas = Collections.unmodifiableList(copy);
+            this.attributes = Collections.unmodifiableMap(new TreeMap<>(attributes));
+            this.erasureLayout = ErasureLayout.parse(attributes.get(LAYOUT));
+            this.codec = PartitionCodec.forName(attributes.get(PartitionCodec.ATTRIBUTE));
+            this.storedSizes = parseStoredSizes(attributes.get(PartitionCodec.STORED_SIZES), copy.size());
+            this.rawSizes = parseStoredSizes(attributes.get(PARTITION_SIZES), copy.size());
+            this.partitionChecksums = parsePartitionChecksums(attributes.get(PARTITION_CHECKSUMS), copy.size());
+        }
+
+        private static long[] parseStoredSizes(String sizes, int numPartitions) {
+            if (sizes == null) {
+                return null;
+            }
+            String[] parts = sizes.isEmpty() ? new String[0] : sizes.split("/");
+            if (parts.length != numPartitions) {
+                throw new IllegalArgumentException("Tailles stockées invalides: " + sizes);
+            }
+            long[] parsed = new long[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                parsed[i] = Long.parseLong(parts[i]);
+            }
+            return parsed;
+        }
+
+        private static long[] parsePartitionChecksums(String checksums, int numPartitions) {
+            if (checksums == null) {
+                return null;
+            }
+            String[] parts = checksums.split("/", -1);
+            if (parts.length != numPartitions) {
+                throw new IllegalArgumentException("Sommes de contrôle des partitions invalides: " + checksums);
+            }
+            long[] parsed = new long[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                parsed[i] = parts[i].isEmpty() ? -1 : Long.parseLong(parts[i], 16);
+            }
+            return parsed;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+
+        public String getLayout() {
+            return attributes.getOrDefault(LAYOUT, REPLICATION);
+        }
+
+        // null si le fichier est répliqué
+        public ErasureLayout getErasureLayout() {
+            return erasureLayout;
+        }
+
+        // null si les partitions ne sont pas compressées
+        public PartitionCodec getCodec() {
+            return codec;
+        }
+
+        // Somme de contrôle CRC32C du fichier, -1 si elle n'a pas été calculée (fichier stocké avant son ajout)
+        public long getChecksum() {
+            String checksum = attributes.get(CHECKSUM);
+            return checksum != null ? Long.parseLong(checksum, 16) : -1;
+        }
+
+        // CRC32C des octets stockés de la partition, -1 s'il est inconnu
+        public long getPartitionChecksum(int index) {
+            return partitionChecksums != null ? partitionChecksums[index] : -1;
+        }
+
+        public boolean isDeduplicated() {
+            return DEDUP.equals(attributes.get(LAYOUT));
+        }
+
+        // Nom du bloc porté par la partition "index" d'un fichier dédupliqué
+        public String getChunkName(int index) {
+            String path = replicas.get(index).get(0);
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        public int getPartitionCount() {
+            return replicas.size();
+        }
+
+        public List<String> getReplicas(int index) {
+            return replicas.get(index);
+        }
+
+        // Chemins de toutes les répliques de toutes les partitions
+        public List<String> getAllReplicas() {
+            List<String> paths = new ArrayList<>();
+            replicas.forEach(paths::addAll);
+            return paths;
+        }
+
+        // Octets stockés sur les secondaires: taille compressée si le fichier a un codec, sinon même découpage
+        // qu'à l'envoi
+        public long getPartitionSize(int index) {
+            if (storedSizes != null) {
+                return storedSizes[index];
+            }
+            if (erasureLayout != null) {
+                return erasureLayout.getShardSize(fileSize);
+            }
+            return getRawPartitionSize(index);
+        }
+
+        // Octets du fichier portés par la partition, avant compression (sans objet en codage d'effacement)
+        public long getRawPartitionSize(int index) {
+            if (isDeduplicated()) {
+                return ContentChunker.chunkSize(getChunkName(index));
+            }
+            if (rawSizes != null) {
+                return rawSizes[index];
+            }
+            long partitionSize = (long) Math.ceil(fileSize / (double) replicas.size());
+            return Math.max(0, Math.min(partitionSize, fileSize - index * partitionSize));
+        }
+
+        // Copie sans la réplique donnée; la dernière réplique d'une partition n'est jamais retirée
+        public Entry withoutReplica(String partitionPath) {
+            List<List<String>> remaining = new ArrayList<>(replicas.size());
+            boolean changed = false;
+            for (List<String> partitionReplicas : replicas) {
+                if (partitionReplicas.size() > 1 && partitionReplicas.contains(partitionPath)) {
+                    List<String> kept = new ArrayList<>(partitionReplicas);
+                    kept.remove(partitionPath);
+                    remaining.add(kept);
+                    changed = true;
+                } else {
+                    remaining.add(partitionReplicas);
+                }
+            }
+            return changed ? new Entry(fileName, fileSize, remaining, attributes) : this;
+        }
+
+        // Copie où la partition "index" gagne la réplique "added" et perd "removed" (null: ajout seul)
+        public Entry withReplicaMoved(int index, String removed, String added) {
+            List<List<String>> moved = new ArrayList<>(replicas);
+            List<String> partitionReplicas = new ArrayList<>(replicas.get(index));
+            partitionReplicas.remove(removed);
+            partitionReplicas.add(added);
+            moved.set(index, partitionReplicas);
+            return new Entry(fileName, fileSize, moved, attributes);
+        }
+    }
+
+    // Partitions hébergées par un serveur secondaire, avec leur volume, tenues à jour à chaque modification
+    public static class NodeUsage {
+        private final Map<String, Long> partitions = new ConcurrentHashMap<>();
+        private final AtomicLong bytes = new AtomicLong();
+
+        public int getPartitionCount() {
+            return partitions.size();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        // Chemin de partition -> taille en octets
+        public Map<String, Long> getPartitions() {
+            return Collections.unmodifiableMap(partitions);
+        }
+    }
+
+    // Taille du journal au-delà de laquelle l'instantané est réécrit
+    private static final long COMPACTION_THRESHOLD = Long.getLong("mainserver.catalogLogMaxBytes", 8L * 1024 * 1024);
+
+    private final File storageFile;
+    private final Path logFile;
+    private final Path rotatedLog;
+    private final CatalogLog log;
+    private final Executor background;
+    private final Consumer<String> logger;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Index inverse: répertoire de stockage du secondaire -> partitions qu'il héberge
+    private final Map<String, NodeUsage> nodes = new ConcurrentHashMap<>();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    // Blocs dédupliqués (sous le verrou du catalogue): nombre de références depuis les fichiers inscrits,
+    // emplacements, références provisoires des envois en cours et blocs en cours de suppression
+    private final Map<String, Integer> chunkRefs = new HashMap<>();
+    private final Map<String, List<String>> chunkLocations = new HashMap<>();
+    private final Map<String, Integer> chunkPins = new HashMap<>();
+    private final Set<String> reclaiming = new HashSet<>();
+
+    public FileCatalog(File storageFile, File logFile, Executor background, Consumer<String> logger) {
+        this.storageFile = storageFile;
+        this.logFile = logFile.toPath();
+        this.rotatedLog = Paths.get(logFile.getPath() + ".old");
+        this.log = new CatalogLog(this.logFile);
+        this.background = background;
+        this.logger = logger;
+    }
+
+    // Charge l'instantané puis rejoue le journal mis de côté par une compaction interrompue et le journal courant
+    public synchronized void load() throws IOException {
+        entries.clear();
+        nodes.clear();
+        chunkRefs.clear();
+        chunkLocations.clear();
+        if (storageFile.exists()) {
+            loadSnapshot();
+        }
+        CatalogLog.replay(rotatedLog, this::apply);
+        long valid = CatalogLog.replay(logFile, this::apply);
+        if (Files.exists(logFile) && Files.size(logFile) > valid) {
+            logger.accept("⚠️ Journal du catalogue tronqué après " + valid + " octets: fin incomplète ignorée");
+        }
+        log.open(valid);
+    }
+
+    // Format de storage.txt: "nom;taille;nombre de partitions[;clé=valeur,...]" suivi d'une ligne par partition
+    // portant les chemins de ses répliques séparés par des tabulations.
+    // Un fichier envoyé plusieurs fois apparaît plusieurs fois: la dernière inscription l'emporte.
+    private void loadSnapshot() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(storageFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Map<String, String> attributes = new HashMap<>();
+                int attributesSep = line.lastIndexOf(';');
+                if (attributesSep > 0 && line.indexOf('=', attributesSep) > 0) {
+                    for (String attribute : line.substring(attributesSep + 1).split(",")) {
+                        int eq = attribute.indexOf('=');
+                        attributes.put(attribute.substring(0, eq), attribute.substring(eq + 1));
+                    }
+                    line = line.substring(0, attributesSep);
+                }
+                int sizeSep = line.lastIndexOf(';', line.lastIndexOf(';') - 1);
+                if (sizeSep <= 0) {
+                    continue;
+                }
+                String[] counts = line.substring(sizeSep + 1).split(";");
+                int numPartitions;
+                long fileSize;
+                try {
+                    fileSize = Long.parseLong(counts[0]);
+                    numPartitions = Integer.parseInt(counts[1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Ligne invalide dans storage.txt: " + line);
+                }
+                List<List<String>> replicas = new ArrayList<>(numPartitions);
+                for (int i = 0; i < numPartitions; i++) {
+                    String paths = reader.readLine();
+                    if (paths == null) {
+                        throw new EOFException("storage.txt tronqué après " + line);
+                    }
+                    replicas.add(paths.isEmpty() ? List.of() : Arrays.asList(paths.split("\t")));
+                }
+                String fileName = line.substring(0, sizeSep);
+                try {
+                    putEntry(new Entry(fileName, fileSize, replicas, attributes));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Ligne invalide dans storage.txt: " + line + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+    }
+
+    private void apply(byte type, DataInputStream payload) throws IOException {
+        switch (type) {
+            case CatalogLog.PUT:
+            case CatalogLog.PUT_REPLICAS:
+            case CatalogLog.PUT_ENTRY:
+                putEntry(decode(type, payload));
+                break;
+            case CatalogLog.DELETE:
+                removeEntry(payload.readUTF());
+                break;
+            default:
+                throw new IOException("Enregistrement de catalogue inconnu: " + type);
+        }
+    }
+
+    public Entry get(String fileName) {
+        return entries.get(fileName);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public List<String> listFileNames() {
+        List<String> fileNames = new ArrayList<>(entries.keySet());
+        Collections.sort(fileNames);
+        return fileNames;
+    }
+
+    // Rend la modification durable avant de rendre la main: l'appelant ne confirme qu'ensuite au client.
+    // Renvoie l'inscription remplacée, dont les blocs dédupliqués ont pu perdre leur dernière référence.
+    public Entry put(Entry entry) throws IOException {
+        return update(entry.getFileName(), current -> entry);
+    }
+
+    // Retire une réplique dont l'écriture a échoué après la validation du fichier
+    public void dropReplica(String fileName, String partitionPath) throws IOException {
+        update(fileName, current -> current == null ? null : current.withoutReplica(partitionPath));
+    }
+
+    // Rééquilibrage: la nouvelle réplique remplace l'ancienne en une seule écriture, les lecteurs voient l'une
+    // ou l'autre. Renvoie faux, sans rien changer, si l'inscription n'est plus "expected" (fichier modifié entre-temps).
+    public boolean moveReplica(Entry expected, int index, String removed, String added) throws IOException {
+        AtomicBoolean moved = new AtomicBoolean();
+        update(expected.getFileName(), current -> {
+            if (current != expected) {
+                return null;
+            }
+            moved.set(true);
+            return current.withReplicaMoved(index, removed, added);
+        });
+        return moved.get();
+    }
+
+    // Applique "change" à l'inscription courante sous le verrou; null ou l'inscription inchangée: rien à écrire
+    private Entry update(String fileName, UnaryOperator<Entry> change) throws IOException {
+        Entry previous;
+        Entry entry;
+        long seq;
+        synchronized (this) {
+            previous = entries.get(fileName);
+            entry = change.apply(previous);
+            if (entry == null || entry == previous) {
+                return null;
+            }
+            seq = log.append(CatalogLog.PUT_ENTRY, encode(entry));
+            putEntry(entry);
+        }
+        try {
+            log.sync(seq);
+        } catch (IOException e) {
+            synchronized (this) {
+                if (entries.get(fileName) == entry) {
+                    removeEntry(fileName);
+                    if (previous != null) {
+                        putEntry(previous);
+                    }
+                }
+            }
+            throw e;
+        }
+        compactIfNeeded();
+        return previous;
+    }
+
+    // Retire le fichier du catalogue et renvoie son inscription, ou null s'il était absent
+    public Entry remove(String fileName) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new DataOutputStream(payload).writeUTF(fileName);
+        Entry removed;
+        long seq;
+        synchronized (this) {
+            removed = removeEntry(fileName);
+            if (removed == null) {
+                return null;
+            }
+            seq = log.append(CatalogLog.DELETE, payload.toByteArray());
+        }
+        try {
+            log.sync(seq);
+        } catch (IOException e) {
+            synchronized (this) {
+                if (!entries.containsKey(fileName)) {
+                    putEntry(removed);
+                }
+            }
+            throw e;
+        }
+        compactIfNeeded();
+        return removed;
+    }
+
+    // Référence provisoire posée par un envoi avant de valider le fichier: le bloc ne peut plus être récupéré.
+    // Renvoie les emplacements du bloc s'il est déjà stocké (inutile de le renvoyer), null sinon.
+    // Un bloc en cours de suppression est attendu puis considéré comme absent.
+    public synchronized List<String> pinChunk(String chunkName) throws InterruptedException {
+        while (reclaiming.contains(chunkName)) {
+            wait();
+        }
+        chunkPins.merge(chunkName, 1, Integer::sum);
+        return chunkLocations.get(chunkName);
+    }
+
+    // À appeler une fois le fichier inscrit (ou l'envoi abandonné), pour chaque pinChunk
+    public synchronized void unpinChunks(Collection<String> chunkNames) {
+        for (String chunkName : chunkNames) {
+            chunkPins.computeIfPresent(chunkName, (name, pins) -> pins > 1 ? pins - 1 : null);
+        }
+    }
+
+    // Parmi les blocs candidats (nom -> emplacements), réserve pour suppression ceux que plus aucun fichier
+    // ni aucun envoi ne référence. L'appelant les supprime puis appelle chunksReclaimed().
+    public synchronized Map<String, List<String>> claimUnreferencedChunks(Map<String, List<String>> candidates) {
+        Map<String, List<String>> claimed = new LinkedHashMap<>();
+        candidates.forEach((chunkName, paths) -> {
+            if (!chunkRefs.containsKey(chunkName) && !chunkPins.containsKey(chunkName)
+                    && reclaiming.add(chunkName)) {
+                claimed.put(chunkName, paths);
+            }
+        });
+        return claimed;
+    }
+
+    public synchronized void chunksReclaimed(Collection<String> chunkNames) {
+        reclaiming.removeAll(chunkNames);
+        notifyAll();
+    }
+
+    // Blocs d'un fichier dédupliqué: nom -> emplacements
+    public static Map<String, List<String>> chunksOf(Entry entry) {
+        Map<String, List<String>> chunks = new LinkedHashMap<>();
+        if (entry != null && entry.isDeduplicated()) {
+            for (int i = 0; i < entry.getPartitionCount(); i++) {
+                chunks.putIfAbsent(entry.getChunkName(i), entry.getReplicas(i));
+            }
+        }
+        return chunks;
+    }
+
+    public synchronized int getChunkCount() {
+        return chunkRefs.size();
+    }
+
+    // Les deux méthodes suivantes sont les seules à modifier le catalogue en mémoire (sous le verrou du catalogue)
+    private Entry putEntry(Entry entry) {
+        Entry previous = entries.put(entry.getFileName(), entry);
+        if (previous != null) {
+            unindex(previous);
+        }
+        for (int i = 0; i < entry.getPartitionCount(); i++) {
+            if (entry.isDeduplicated()) {
+                // Un bloc partagé n'est compté qu'une fois sur son secondaire, à sa première référence
+                String chunkName = entry.getChunkName(i);
+                if (chunkRefs.merge(chunkName, 1, Integer::sum) > 1) {
+                    continue;
+                }
+                chunkLocations.put(chunkName, entry.getReplicas(i));
+            }
+            long size = entry.getPartitionSize(i);
+            for (String path : entry.getReplicas(i)) {
+                NodeUsage usage = nodes.computeIfAbsent(nodeOf(path), node -> new NodeUsage());
+                Long replaced = usage.partitions.put(path, size);
+                usage.bytes.addAndGet(size - (replaced == null ? 0 : replaced));
+            }
+        }
+        return previous;
+    }
+
+    private Entry removeEntry(String fileName) {
+        Entry removed = entries.remove(fileName);
+        if (removed != null) {
+            unindex(removed);
+        }
+        return removed;
+    }
+
+    private void unindex(Entry entry) {
+        for (int i = 0; i < entry.getPartitionCount(); i++) {
+            if (entry.isDeduplicated()) {
+                String chunkName = entry.getChunkName(i);
+                if (chunkRefs.computeIfPresent(chunkName, (name, refs) -> refs > 1 ? refs - 1 : null) != null) {
+                    continue;
+                }
+                chunkLocations.remove(chunkName);
+            }
+            for (String path : entry.getReplicas(i)) {
+                NodeUsage usage = nodes.get(nodeOf(path));
+                Long size = usage == null ? null : usage.partitions.remove(path);
+                if (size != null) {
+                    usage.bytes.addAndGet(-size);
+                }
+            }
+        }
+    }
+
+    // Répertoire de stockage du secondaire d'après le chemin de partition inscrit au catalogue
+    public static String nodeOf(String partitionPath) {
+        return partitionPath.substring(0, Math.max(0, partitionPath.lastIndexOf('/')));
+    }
+
+    // Partitions et volume d'un secondaire, sans parcourir le catalogue
+    public NodeUsage getNodeUsage(String storagePath) {
+        NodeUsage usage = nodes.get(storagePath);
+        return usage != null ? usage : new NodeUsage();
+    }
+
+    public Map<String, NodeUsage> getNodeUsages() {
+        return Collections.unmodifiableMap(nodes);
+    }
+
+    private void compactIfNeeded() {
+        if (log.size() > COMPACTION_THRESHOLD && compacting.compareAndSet(false, true)) {
+            background.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    logger.accept("❌ Erreur de compaction du catalogue: " + e.getMessage());
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    // Le journal courant est mis de côté en même temps qu'une copie du catalogue est prise;
+    // il n'est supprimé qu'une fois l'instantané correspondant écrit sur disque
+    public void compact() throws IOException {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.values());
+            if (Files.exists(rotatedLog)) {
+                // Compaction précédente interrompue: son journal n'est couvert par aucun instantané
+                writeSnapshot(snapshot);
+            }
+            log.rotate(rotatedLog);
+        }
+        writeSnapshot(snapshot);
+        Files.deleteIfExists(rotatedLog);
+        logger.accept("📚 Catalogue compacté: " + snapshot.size() + " fichier(s)");
+    }
+
+    // Écrit l'instantané dans un fichier temporaire synchronisé sur disque puis le remplace d'un coup
+    private void writeSnapshot(List<Entry> snapshot) throws IOException {
+        File temp = new File(storageFile.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(fileOut)))) {
+            for (Entry entry : snapshot) {
+                StringBuilder header = new StringBuilder();
+                header.append(entry.getFileName()).append(';').append(entry.getFileSize())
+                        .append(';').append(entry.getPartitionCount());
+                String separator = ";";
+                for (Map.Entry<String, String> attribute : entry.getAttributes().entrySet()) {
+                    header.append(separator).append(attribute.getKey()).append('=').append(attribute.getValue());
+                    separator = ",";
+                }
+                writer.println(header);
+                for (int i = 0; i < entry.getPartitionCount(); i++) {
+                    writer.println(String.join("\t", entry.getReplicas(i)));
+                }
+            }
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Écriture impossible dans " + temp);
+            }
+            fileOut.getFD().sync();
+        }
+        Files.move(temp.toPath(), storageFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encode(Entry entry) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        try {
+            out.writeUTF(entry.getFileName());
+            out.writeLong(entry.getFileSize());
+            out.writeInt(entry.getAttributes().size());
+            for (Map.Entry<String, String> attribute : entry.getAttributes().entrySet()) {
+                out.writeUTF(attribute.getKey());
+                out.writeUTF(attribute.getValue());
+            }
+            out.writeInt(entry.getPartitionCount());
+            for (int i = 0; i < entry.getPartitionCount(); i++) {
+                List<String> partitionReplicas = entry.getReplicas(i);
+                out.writeInt(partitionReplicas.size());
+                for (String path : partitionReplicas) {
+                    out.writeUTF(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return payload.toByteArray();
+    }
+
+    // Les enregistrements PUT (avant la réplication) portent un seul chemin par partition,
+    // et seuls les PUT_ENTRY portent des attributs
+    private static Entry decode(byte type, DataInputStream in) throws IOException {
+        boolean withReplicas = type != CatalogLog.PUT;
+        String fileName = in.readUTF();
+        long fileSize = in.readLong();
+        Map<String, String> attributes = new HashMap<>();
+        if (type == CatalogLog.PUT_ENTRY) {
+            int numAttributes = in.readInt();
+            for (int i = 0; i < numAttributes; i++) {
+                attributes.put(in.readUTF(), in.readUTF());
+            }
+        }
+        int numPartitions = in.readInt();
+        List<List<String>> replicas = new ArrayList<>(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            int numReplicas = withReplicas ? in.readInt() : 1;
+            List<String> partitionReplicas = new ArrayList<>(numReplicas);
+            for (int j = 0; j < numReplicas; j++) {
+                partitionReplicas.add(in.readUTF());
+            }
+            replicas.add(partitionReplicas);
+        }
+        try {
+            return new Entry(fileName, fileSize, replicas, attributes);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Enregistrement de catalogue invalide pour " + fileName + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+// Cache du contenu des fichiers les plus téléchargés, borné en octets.
+// Remplacement LRU avec admission TinyLFU: quand le cache est plein, un fichier n'entre que s'il a été demandé
+// plus souvent que chacun de ceux qu'il évincerait. Les fréquences sont estimées par un sketch count-min dont
+// les compteurs sont divisés par deux périodiquement, pour oublier les fichiers qui ne sont plus demandés.
+// Le contenu est gardé hors du tas (ByteBuffer direct) par défaut pour ne pas allonger les pauses du GC.
+public class FileContentCache {
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+    private static final int MAX_FREQUENCY = 15;
+    // Demandes comptées entre deux divisions des compteurs
+    private static final int SKETCH_SAMPLE_SIZE = 10 * SKETCH_WIDTH;
+    private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // Contenu d'un fichier tel qu'inscrit au catalogue au moment de sa lecture
+    public static class Content {
+        private final FileCatalog.Entry entry;
+        private final ByteBuffer data;
+
+        private Content(FileCatalog.Entry entry, ByteBuffer data) {
+            this.entry = entry;
+            this.data = data;
+        }
+
+        public void writeTo(OutputStream dest, long offset, long length) throws IOException {
+            ByteBuffer view = data.duplicate();
+            view.position((int) offset).limit((int) (offset + length));
+            byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, length)];
+            while (view.hasRemaining()) {
+                int n = Math.min(buffer.length, view.remaining());
+                view.get(buffer, 0, n);
+                dest.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private final long capacity;
+    private final long maxEntrySize;
+    private final boolean offHeap;
+    // Ordre d'accès: le premier fichier est le moins récemment servi
+    private final LinkedHashMap<String, Content> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final byte[][] sketch = new byte[SKETCH_DEPTH][SKETCH_WIDTH];
+    private int sketchAdditions;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    // "capacity" en octets, 0 pour désactiver le cache; un fichier ne peut occuper plus du huitième du cache
+    public FileContentCache(long capacity, boolean offHeap) {
+        this.capacity = capacity;
+        this.maxEntrySize = Math.min(Integer.MAX_VALUE, capacity / 8);
+        this.offHeap = offHeap;
+    }
+
+    // Contenu en cache du fichier dans la version "entry"; chaque appel compte comme une demande du fichier
+    public synchronized Content get(FileCatalog.Entry entry) {
+        recordAccess(entry.getFileName());
+        Content content = entries.get(entry.getFileName());
+        if (content != null && content.entry == entry) {
+            hits++;
+            return content;
+        }
+        if (content != null) {
+            // Version remplacée depuis sa mise en cache
+            remove(entry.getFileName());
+        }
+        misses++;
+        return null;
+    }
+
+    // Vrai si le fichier serait admis maintenant: inutile de copier sa lecture sinon
+    public synchronized boolean wouldAdmit(FileCatalog.Entry entry) {
+        if (entry.getFileSize() <= 0 || entry.getFileSize() > maxEntrySize) {
+            return false;
+        }
+        if (findVictims(entry) == null) {
+            rejections++;
+            return false;
+        }
+        return true;
+    }
+
+    // Tampon destiné au contenu du fichier; null si la mémoire hors du tas est épuisée
+    public ByteBuffer allocate(long size) {
+        try {
+            return offHeap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+    }
+
+    // Inscrit le contenu complet du fichier (tampon prêt à être lu), si l'admission le permet toujours
+    public synchronized void put(FileCatalog.Entry entry, ByteBuffer data) {
+        if (data.remaining() != entry.getFileSize()) {
+            return;
+        }
+        List<String> victims = findVictims(entry);
+        if (victims == null) {
+            rejections++;
+            return;
+        }
+        for (String victim : victims) {
+            remove(victim);
+            evictions++;
+        }
+        remove(entry.getFileName());
+        entries.put(entry.getFileName(), new Content(entry, data.asReadOnlyBuffer()));
+        usedBytes += entry.getFileSize();
+    }
+
+    // Après une suppression ou un nouvel envoi: l'ancienne version ne doit plus occuper le cache
+    public synchronized void invalidate(String fileName) {
+        remove(fileName);
+    }
+
+    // Fichiers à évincer, du moins récemment servi au plus récent, pour faire place à "entry";
+    // null si l'un d'eux est demandé au moins aussi souvent que lui
+    private List<String> findVictims(FileCatalog.Entry entry) {
+        if (entry.getFileSize() > maxEntrySize) {
+            return null;
+        }
+        Content current = entries.get(entry.getFileName());
+        long needed = usedBytes - (current != null ? current.data.capacity() : 0) + entry.getFileSize() - capacity;
+        int frequency = frequency(entry.getFileName());
+        List<String> victims = new ArrayList<>();
+        // Parcours sans entries.get(): en ordre d'accès, une lecture réordonnerait la table
+        for (Map.Entry<String, Content> cached : entries.entrySet()) {
+            if (needed <= 0) {
+                break;
+            }
+            if (cached.getKey().equals(entry.getFileName())) {
+                continue;
+            }
+            if (frequency(cached.getKey()) >= frequency) {
+                return null;
+            }
+            victims.add(cached.getKey());
+            needed -= cached.getValue().data.capacity();
+        }
+        return needed <= 0 ? victims : null;
+    }
+
+    private void remove(String fileName) {
+        Content removed = entries.remove(fileName);
+        if (removed != null) {
+            usedBytes -= removed.data.capacity();
+        }
+    }
+
+    private void recordAccess(String fileName) {
+        int hash = fileName.hashCode();
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            int index = index(hash, i);
+            if (sketch[i][index] < MAX_FREQUENCY) {
+                sketch[i][index]++;
+            }
+        }
+        if (++sketchAdditions >= SKETCH_SAMPLE_SIZE) {
+            for (byte[] row : sketch) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] >>= 1;
+                }
+            }
+            sketchAdditions /= 2;
+        }
+    }
+
+    private int frequency(String fileName) {
+        int hash = fileName.hashCode();
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SKETCH_DEPTH; i++) {
+            frequency = Math.min(frequency, sketch[i][index(hash, i)]);
+        }
+        return frequency;
+    }
+
+    private static int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return h & (SKETCH_WIDTH - 1);
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getFileCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Fichiers lus en entier mais refusés par l'admission (moins demandés que ceux qu'ils évinceraient)
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long requests = hits + misses;
+        return String.format("Cache: %.1f/%.1f Mo, %d fichier(s), %d succès / %d échecs (%.0f%%), %d éviction(s), %d refus",
+                usedBytes / (1024.0 * 1024.0), capacity / (1024.0 * 1024.0), entries.size(), hits, misses,
+                requests == 0 ? 0.0 : 100.0 * hits / requests, evictions, rejections);
+    }
+}
@@ -0,0 +1,84 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// Anneau de hachage cohérent: chaque secondaire y occupe VIRTUAL_NODES positions pondérées par sa capacité
+// (PlacementPolicy.capacityWeights), dérivées de son répertoire de stockage (identité stable d'un redémarrage
+// à l'autre): un disque deux fois plus grand reçoit environ deux fois plus de clés. Une clé (nom de partition, de fragment ou de bloc)
+// est confiée aux premiers serveurs distincts rencontrés en parcourant l'anneau depuis son empreinte.
+// L'emplacement ne dépend que de la clé et des serveurs enregistrés: ajouter ou retirer un serveur ne déplace
+// qu'environ 1/N des clés. Instantané immuable, reconstruit à chaque changement de composition.
+public class HashRing {
+    public static final int VIRTUAL_NODES = Integer.getInteger("mainserver.virtualNodes", 128);
+
+    private final NavigableMap<Long, SecondaryServerInfo> positions = new TreeMap<>();
+    private final int serverCount;
+
+    public HashRing(Collection<SecondaryServerInfo> servers) {
+        List<SecondaryServerInfo> members = new ArrayList<>(servers);
+        double[] weights = PlacementPolicy.capacityWeights(members);
+        for (int i = 0; i < members.size(); i++) {
+            SecondaryServerInfo server = members.get(i);
+            int virtualNodes = Math.max(1, (int) Math.round(VIRTUAL_NODES * weights[i]));
+            for (int v = 0; v < virtualNodes; v++) {
+                positions.putIfAbsent(hash(server.getStoragePath() + "#" + v), server);
+            }
+        }
+        this.serverCount = members.size();
+    }
+
+    public int getServerCount() {
+        return serverCount;
+    }
+
+    // Tous les serveurs dans l'ordre de préférence pour la clé: le premier est son propriétaire,
+    // les suivants ses répliques puis les remplaçants quand un serveur est écarté
+    public List<SecondaryServerInfo> preferenceList(String key) {
+        List<SecondaryServerInfo> servers = new ArrayList<>(serverCount);
+        if (positions.isEmpty()) {
+            return servers;
+        }
+        Set<SecondaryServerInfo> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long start = hash(key);
+        for (Map<Long, SecondaryServerInfo> part : List.of(positions.tailMap(start, true), positions.headMap(start, false))) {
+            for (SecondaryServerInfo server : part.values()) {
+                if (seen.add(server)) {
+                    servers.add(server);
+                    if (servers.size() == serverCount) {
+                        return servers;
+                    }
+                }
+            }
+        }
+        return servers;
+    }
+
+    // Les "count" premiers serveurs de la liste de préférence retenus par "accepted" (disponibles, assez d'espace)
+    public List<SecondaryServerInfo> locate(String key, int count, Set<SecondaryServerInfo> accepted) {
+        List<SecondaryServerInfo> located = new ArrayList<>(count);
+        for (SecondaryServerInfo server : preferenceList(key)) {
+            if (located.size() == count) {
+                break;
+            }
+            if (accepted.contains(server)) {
+                located.add(server);
+            }
+        }
+        return located;
+    }
+
+    // 64 premiers bits du MD5: répartition uniforme, identique d'une JVM à l'autre
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xFF);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 indisponible", e);
+        }
+    }
+}
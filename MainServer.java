@@ -6,25 +6,125 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
+import java.nio.ByteBuffer;
 import java.nio.file.*;
 import java.text.SimpleDateFormat;
 
 
 
 public class MainServer extends JFrame {
+    // Nombre de connexions clientes traitées simultanément; les autres attendent dans le sélecteur
+    private static final int MAX_CONNECTION_WORKERS = Integer.getInteger("mainserver.maxWorkers", 64);
+    private static final int MAX_CONNECTIONS = Integer.getInteger("mainserver.maxConnections", 20_000);
+    // Nombre de secondaires recevant chaque partition, et nombre d'accusés attendus avant de valider l'envoi
+    private static final int REPLICATION_FACTOR = Integer.getInteger("mainserver.replicationFactor", 2);
+    private static final int WRITE_QUORUM = Integer.getInteger("mainserver.writeQuorum", REPLICATION_FACTOR / 2 + 1);
+    // Taille fixe des blocs (partitions) d'un fichier répliqué, le dernier excepté; 4 à 64 Mo conviennent
+    private static final long PARTITION_SIZE = Long.getLong("mainserver.partitionKb", 16 * 1024) * 1024;
+    // Blocs lus d'avance pendant que le client reçoit le bloc courant, chacun borné à PARTITION_QUEUE_CHUNKS paquets
+    private static final int READ_AHEAD_BLOCKS = Integer.getInteger("mainserver.readAheadBlocks", 2);
+    // Disposition appliquée quand le client n'en demande pas: "replication", "dedup" ou "rs-k-m"
+    private static final String DEFAULT_LAYOUT = System.getProperty("mainserver.layout", FileCatalog.REPLICATION);
+    // Compression des partitions répliquées: "deflate-fast", "deflate-high" ou "none"
+    private static final PartitionCodec CODEC = PartitionCodec.forName(System.getProperty("mainserver.codec", "deflate-fast"));
+    // Un fragment qui ne livre rien pendant ce délai est remplacé par un autre à la lecture
+    private static final int SHARD_READ_TIMEOUT_MS = 5_000;
+    // Blocs en attente par partition: borne la mémoire d'un envoi à 16 x 64 Ko
+    private static final int PARTITION_QUEUE_CHUNKS = 16;
+    private static final byte[] END_OF_PARTITION = new byte[0];
+    private static final byte[] ABORTED_PARTITION = new byte[0];
+    // Blocs dédupliqués en cours d'envoi par téléchargement: borne la mémoire à 4 x 2 Mo
+    private static final int DEDUP_CHUNKS_IN_FLIGHT = 4;
+    // Opérations groupées: fichiers traités en parallèle par requête; un fichier envoyé d'au plus
+    // BATCH_BUFFER_SIZE octets est gardé en mémoire pour être stocké pendant la lecture des suivants
+    private static final int BATCH_PARALLELISM = Integer.getInteger("mainserver.batchParallelism", 8);
+    private static final int BATCH_BUFFER_SIZE = 1024 * 1024;
+    // Cache des fichiers les plus téléchargés (0 pour le désactiver), hors du tas par défaut
+    private static final long CACHE_BYTES = Long.getLong("mainserver.cacheMb", 128) * 1024 * 1024;
+    private static final boolean CACHE_OFF_HEAP = Boolean.parseBoolean(System.getProperty("mainserver.cacheOffHeap", "true"));
+    // Battements (PING) vers chaque secondaire; un battement sans réponse rend aussitôt le serveur suspect
+    private static final long HEARTBEAT_INTERVAL_MS = Long.getLong("mainserver.heartbeatMs", 1000);
+    private static final int HEARTBEAT_TIMEOUT_MS = 2_000;
+    // Suspect sans battement depuis ce délai: affiché hors ligne
+    private static final long OFFLINE_AFTER_MS = 30_000;
+    // Rééquilibrage: débit de chaque copie entre secondaires, passage périodique en plus de celui déclenché
+    // par un changement de composition, et délai avant de supprimer une réplique déplacée (lectures en cours)
+    private static final long REBALANCE_BYTES_PER_SECOND = Long.getLong("mainserver.rebalanceMbPerSec", 16) * 1024 * 1024;
+    private static final long REBALANCE_INTERVAL_SECONDS = Long.getLong("mainserver.rebalanceIntervalSeconds", 300);
+    private static final long REBALANCE_DELAY_SECONDS = 5;
+    private static final long REPLICA_RELEASE_DELAY_SECONDS = 60;
+
     private List<SecondaryServerInfo> secondaryServers;
+    // Emplacement des partitions, reconstruit quand un secondaire s'ajoute
+    private volatile HashRing ring = new HashRing(List.of());
+    private ExecutorService partitionExecutor;
+    private ScheduledExecutorService maintenanceExecutor;
+    // Battements et détection de panne à part: une compaction du catalogue ne doit pas les retarder
+    private ScheduledExecutorService heartbeatExecutor;
+    private ScheduledExecutorService rebalanceExecutor;
+    private final AtomicBoolean rebalanceScheduled = new AtomicBoolean();
+    // Fichiers en cours d'envoi ou de déplacement de réplique: les deux s'excluent pour un même fichier
+    private final Set<String> busyFiles = new HashSet<>();
+    // Répliques libérées dont le serveur est inconnu ou injoignable (chemin -> fichier), supprimées à son retour
+    private final Map<String, String> pendingReleases = new ConcurrentHashMap<>();
     private JTextArea serverLog;
     private JTable serversTable;
     private DefaultTableModel tableModel;
     private JButton controlButton;
     private int mainServerPort = 5000;
-    private ServerSocket serverSocket;
+    private SelectorServer connectionServer;
     private File storageFile;
+    private FileCatalog catalog;
+    private UploadSessions uploadSessions;
+    private FileContentCache contentCache;
+    private JLabel cacheLabel;
+    // Dernier état journalisé de chaque secondaire, par ID
+    private final Map<Integer, String> serverStates = new ConcurrentHashMap<>();
     private boolean isServerRunning = false;
     private Thread serverThread;
 
     public MainServer() {
-        secondaryServers = new ArrayList<>();
+        secondaryServers = new CopyOnWriteArrayList<>();
+        // Pas de borne fixe: toutes les répliques d'une partition doivent consommer leur file en même temps,
+        // sinon une réplique en attente d'un thread bloquerait la lecture du client. Le nombre de transferts
+        // reste borné par les connexions clientes actives.
+        partitionExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "partition-transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Fermeture régulière des connexions inactives vers les secondaires
+        maintenanceExecutor.scheduleAtFixedRate(() -> secondaryServers.forEach(
+                server -> server.getConnectionPool().evictIdle()), 30, 30, TimeUnit.SECONDS);
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(this::sendHeartbeats,
+                HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        // Un seul passage de rééquilibrage à la fois, à basse priorité
+        rebalanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rebalancer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        rebalanceExecutor.scheduleWithFixedDelay(this::rebalance,
+                REBALANCE_INTERVAL_SECONDS, REBALANCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
         storageFile = new File("storage.txt");
         if (!storageFile.exists()) {
             try {
@@ -34,6 +134,22 @@ public class MainServer extends JFrame {
             }
         }
         setupGUI();
+        // Le catalogue est lu une seule fois: les requêtes sont ensuite servies depuis la mémoire
+        catalog = new FileCatalog(storageFile, new File("storage.log"), maintenanceExecutor, this::updateLog);
+        try {
+            catalog.load();
+            updateLog("📚 Catalogue chargé: " + catalog.size() + " fichier(s)");
+        } catch (IOException e) {
+            updateLog("❌ Erreur de chargement du catalogue: " + e.getMessage());
+        }
+        uploadSessions = new UploadSessions(Paths.get("uploads"), this::updateLog);
+        maintenanceExecutor.scheduleAtFixedRate(uploadSessions::expire, 1, 1, TimeUnit.HOURS);
+        contentCache = new FileContentCache(CACHE_BYTES, CACHE_OFF_HEAP);
+        // Compteurs du cache affichés pour le dimensionner
+        maintenanceExecutor.scheduleAtFixedRate(() -> {
+            String stats = contentCache.toString();
+            SwingUtilities.invokeLater(() -> cacheLabel.setText(stats));
+        }, 5, 5, TimeUnit.SECONDS);
     }
 
     private void setupGUI() {
@@ -52,12 +168,14 @@ public class MainServer extends JFrame {
         updateControlButton();
         controlButton.addActionListener(e -> toggleServer());
         controlPanel.add(controlButton);
+        cacheLabel = new JLabel();
+        controlPanel.add(cacheLabel);
 
         // Panneau central
         JPanel centerPanel = new JPanel(new GridLayout(2, 1, 0, 10));
 
         // Configuration du tableau
-        String[] columns = {"ID", "Adresse IP", "Port", "Chemin de stockage", "État"};
+        String[] columns = {"ID", "Adresse IP", "Port", "Chemin de stockage", "Partitions", "Volume", "Espace libre", "Charge", "Latence", "État"};
         tableModel = new DefaultTableModel(columns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -113,17 +231,15 @@ public class MainServer extends JFrame {
     }
 
     private void setupServer() {
+        connectionServer = new SelectorServer(mainServerPort, MAX_CONNECTION_WORKERS, MAX_CONNECTIONS,
+                this::serveConnection, this::updateLog);
         serverThread = new Thread(() -> {
             try {
-                serverSocket = new ServerSocket(mainServerPort);
+                connectionServer.open();
                 updateLog("🚀 Serveur démarré sur le port " + mainServerPort);
-
-                while (!serverSocket.isClosed()) {
-                    Socket clientSocket = serverSocket.accept();
-                    handleNewConnection(clientSocket);
-                }
+                connectionServer.run();
             } catch (IOException e) {
-                if (!serverSocket.isClosed()) {
+                if (connectionServer.isOpen()) {
                     updateLog("❌ Erreur serveur: " + e.getMessage());
                 }
             }
@@ -133,15 +249,15 @@ public class MainServer extends JFrame {
     }
 
     private void startServer() {
-        if (serverSocket == null || serverSocket.isClosed()) {
+        if (connectionServer == null || !connectionServer.isOpen()) {
             setupServer();
         }
     }
 
     private void stopServer() {
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            if (connectionServer != null && connectionServer.isOpen()) {
+                connectionServer.close();
                 updateLog("🛑 Serveur arrêté");
                 clearServersTable();
             }
@@ -153,226 +269,2146 @@ public class MainServer extends JFrame {
     private void clearServersTable() {
         SwingUtilities.invokeLater(() -> {
             tableModel.setRowCount(0);
+            secondaryServers.forEach(server -> server.getConnectionPool().close());
             secondaryServers.clear();
+            serverStates.clear();
+            ring = new HashRing(List.of());
         });
     }
 
-    private void handleNewConnection(Socket socket) {
-        Thread connectionHandler = new Thread(() -> {
-            try {
-                ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-                ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+    // Appelé par le sélecteur quand la connexion a des données à lire; renvoie true pour la garder ouverte.
+    // Une connexion binaire peut enchaîner plusieurs requêtes et retourne au sélecteur entre deux.
+    private boolean serveConnection(SelectorServer.Client client) throws IOException, ClassNotFoundException {
+        Protocol.Connection connection = (Protocol.Connection) client.getState();
+        boolean readable = true;
+        if (connection == null) {
+            Socket socket = client.socket();
+            // Les anciens clients ouvrent un flux d'objets Java (en-tête 0xACED): ils restent acceptés
+            BufferedInputStream input = new BufferedInputStream(socket.getInputStream(), Protocol.Connection.BUFFER_SIZE);
+            input.mark(2);
+            int first = input.read();
+            int second = input.read();
+            input.reset();
+
+            if (first == 0xAC && second == 0xED) {
+                handleLegacyConnection(socket, input);
+                return false;
+            }
+            connection = new Protocol.Connection(socket, input);
+            Protocol.serverHandshake(connection.in(), connection.out());
+            client.setState(connection);
+            readable = connection.in().available() > 0;
+        }
 
-                String connectionType = (String) in.readObject();
+        while (readable) {
+            Protocol.Message request = Protocol.Message.readFrom(connection.in());
+            if (request == null) {
+                return false;
+            }
+            handleRequest(request, connection);
+            readable = connection.in().available() > 0;
+        }
+        return true;
+    }
 
-                if (connectionType.equals("SECONDARY_SERVER")) {
-                    handleSecondaryServer(socket, in, out);
-                } else if (connectionType.equals("CLIENT")) {
-                    handleClient(socket, in, out);
+    private void handleRequest(Protocol.Message request, Protocol.Connection connection) throws IOException {
+        switch (request.opcode()) {
+            case Protocol.REGISTER: {
+                String ip = request.getString();
+                int port = request.getInt();
+                String storagePath = request.getString();
+                SecondaryServerInfo registering = new SecondaryServerInfo(ip, port, storagePath);
+                registering.readStats(request);
+                SecondaryServerInfo serverInfo = registerSecondaryServer(registering);
+                connection.send(Protocol.Message.ok().putInt(serverInfo.getId()));
+                break;
+            }
+            case Protocol.UPLOAD: {
+                String fileName = request.getString();
+                long fileSize = request.getLong();
+                String layout = request.hasRemaining() ? request.getString() : null;
+                ChunkedInputStream data = new ChunkedInputStream(connection.in());
+                String error;
+                try {
+                    error = handleFileUpload(fileName, fileSize, fileSize, data, layout);
+                } finally {
+                    data.drain();
                 }
-            } catch (Exception e) {
-                updateLog("❌ Erreur de connexion: " + e.getMessage());
+                connection.send(error == null ? Protocol.Message.ok() : Protocol.Message.error(error));
+                break;
             }
-        });
-        connectionHandler.start();
+            case Protocol.UPLOAD_OPEN: {
+                String fileName = request.getString();
+                long fileSize = request.getLong();
+                String layout = request.getString();
+                String uploadId = request.getString();
+                try {
+                    UploadSessions.Session session = uploadSessions.open(fileName, fileSize, layout, uploadId);
+                    connection.send(Protocol.Message.ok().putString(session.getId()).putLong(session.getReceived()));
+                } catch (IOException e) {
+                    updateLog("❌ Erreur d'ouverture de la session de téléchargement: " + e.getMessage());
+                    connection.send(Protocol.Message.error(e.getMessage()));
+                }
+                break;
+            }
+            case Protocol.UPLOAD_CHUNKS: {
+                UploadSessions.Session session = uploadSessions.get(request.getString());
+                String error = uploadSessions.receive(session, request.getLong(), connection.in());
+                connection.send(error == null
+                        ? Protocol.Message.ok().putLong(session.getReceived())
+                        : Protocol.Message.error(error));
+                break;
+            }
+            case Protocol.UPLOAD_COMMIT:
+                handleUploadCommit(connection, request.getString(), request.getLong());
+                break;
+            case Protocol.DOWNLOAD:
+                handleBinaryDownload(connection, request.getString());
+                break;
+            case Protocol.DOWNLOAD_RANGE:
+                handleRangeDownload(connection, request.getString(), request.getLong(), request.getLong());
+                break;
+            case Protocol.DELETE:
+                connection.send(handleFileDelete(request.getString())
+                        ? Protocol.Message.ok()
+                        : Protocol.Message.error("Fichier non trouvé"));
+                break;
+            case Protocol.UPLOAD_BATCH:
+                handleUploadBatch(request, connection);
+                break;
+            case Protocol.DOWNLOAD_BATCH:
+                handleDownloadBatch(request, connection);
+                break;
+            case Protocol.DELETE_BATCH:
+                handleDeleteBatch(request, connection);
+                break;
+            case Protocol.LIST_FILES: {
+                List<String> fileNames = listFiles();
+                Protocol.Message reply = Protocol.Message.ok().putInt(fileNames.size());
+                fileNames.forEach(reply::putString);
+                connection.send(reply);
+                updateLog("📋 Liste des fichiers envoyée au client");
+                break;
+            }
+            default:
+                connection.send(Protocol.Message.error("Opération inconnue: " + request.opcode()));
+                throw new IOException("Opération inconnue: " + request.opcode());
+        }
     }
 
-    private void handleSecondaryServer(Socket socket, ObjectInputStream in, ObjectOutputStream out) 
-            throws IOException, ClassNotFoundException {
-        SecondaryServerInfo serverInfo = (SecondaryServerInfo) in.readObject();
+    private void handleLegacyConnection(Socket socket, InputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(input);
+        ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+
+        String connectionType = (String) in.readObject();
+
+        if (connectionType.equals("SECONDARY_SERVER")) {
+            updateLog("❌ Serveur secondaire refusé: ancien protocole, mise à jour requise");
+        } else if (connectionType.equals("CLIENT")) {
+            handleClient(socket, in, out);
+        }
+    }
+
+    private synchronized SecondaryServerInfo registerSecondaryServer(SecondaryServerInfo serverInfo) {
+        for (SecondaryServerInfo known : secondaryServers) {
+            if (known.getStoragePath().equals(serverInfo.getStoragePath())) {
+                // Même répertoire de stockage: le serveur revient (redémarrage, nouvelle adresse) et garde son ID
+                known.setIp(serverInfo.getIp());
+                known.setPort(serverInfo.getPort());
+                known.copyStats(serverInfo);
+                known.resetLiveness(HEARTBEAT_INTERVAL_MS);
+                serverStates.put(known.getId(), serverState(known));
+                updateServersTable();
+                updateLog("🔄 Serveur secondaire reconnecté: ID=" + known.getId() +
+                         "\n   └─ IP: " + known.getIp() +
+                         "\n   └─ Port: " + known.getPort());
+                releasePending(known.getStoragePath());
+                return known;
+            }
+        }
         serverInfo.setId(secondaryServers.size() + 1);
+        serverInfo.resetLiveness(HEARTBEAT_INTERVAL_MS);
+        serverStates.put(serverInfo.getId(), serverState(serverInfo));
         secondaryServers.add(serverInfo);
+        ring = new HashRing(secondaryServers);
+        // Le nouveau serveur ne reçoit pas que les nouveaux fichiers: sa part des partitions existantes lui est copiée
+        scheduleRebalance();
         updateServersTable();
         updateLog("🖥️ Nouveau serveur secondaire connecté: ID=" + serverInfo.getId() + 
                  "\n   └─ IP: " + serverInfo.getIp() + 
                  "\n   └─ Port: " + serverInfo.getPort() + 
                  "\n   └─ Stockage: " + serverInfo.getStoragePath());
+        releasePending(serverInfo.getStoragePath());
+        return serverInfo;
     }
 
+    // Ancien protocole par sérialisation d'objets, conservé le temps de la migration des clients
     private void handleClient(Socket socket, ObjectInputStream in, ObjectOutputStream out) 
             throws IOException, ClassNotFoundException {
         String action = (String) in.readObject();
 
         switch (action) {
             case "UPLOAD":
-                handleFileUpload(in);
+                handleLegacyUpload(in);
+                break;
+            case "UPLOAD_STREAM":
+                handleStreamUpload(in, out);
                 break;
             case "DOWNLOAD":
                 handleFileDownload(out, (String) in.readObject());
                 break;
+            case "DOWNLOAD_STREAM":
+                handleStreamDownload(out, (String) in.readObject());
+                break;
             case "DELETE":
-                handleFileDelete((String) in.readObject());
+                out.writeObject(handleFileDelete((String) in.readObject()) ? "SUCCESS" : "ERREUR");
+                out.flush();
                 break;
             case "LIST_FILES":
-                sendFileList(out);
+                out.writeObject(new ArrayList<>(listFiles()));
+                out.flush();
+                updateLog("📋 Liste des fichiers envoyée au client");
                 break;
         }
     }
 
-    private void handleFileUpload(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    // Ancien mode: le fichier complet arrive en un seul byte[]
+    private void handleLegacyUpload(ObjectInputStream in) throws IOException, ClassNotFoundException {
         String fileName = (String) in.readObject();
         long fileSize = (Long) in.readObject();
         byte[] fileData = (byte[]) in.readObject();
+        handleFileUpload(fileName, fileSize, fileData.length, new ByteArrayInputStream(fileData), null);
+    }
+
+    // Mode flux: le fichier arrive par blocs et chaque bloc est relayé aussitôt aux secondaires
+    // Le client reçoit ensuite "SUCCESS" ou le détail des partitions en échec
+    private void handleStreamUpload(ObjectInputStream in, ObjectOutputStream out) throws IOException, ClassNotFoundException {
+        String fileName = (String) in.readObject();
+        long fileSize = (Long) in.readObject();
+        ChunkedInputStream data = new ChunkedInputStream(in);
+        String error;
+        try {
+            error = handleFileUpload(fileName, fileSize, fileSize, data, null);
+        } finally {
+            data.drain();
+        }
+        out.writeObject(error == null ? "SUCCESS" : error);
+        out.flush();
+    }
+
+    // "layout" choisit la disposition du fichier (null: disposition par défaut du serveur).
+    // Renvoie null si le fichier a été stocké, sinon le détail des échecs.
+    private String handleFileUpload(String fileName, long fileSize, long dataLength, InputStream data, String layout)
+            throws IOException {
+        lockFile(fileName);
+        try {
+            return storeFile(fileName, fileSize, dataLength, data, layout);
+        } finally {
+            unlockFile(fileName);
+        }
+    }
+
+    private String storeFile(String fileName, long fileSize, long dataLength, InputStream data, String layout)
+            throws IOException {
         updateLog("📤 Téléchargement du fichier: " + fileName);
 
-        int numPartitions = secondaryServers.size();
-        if (numPartitions == 0) {
+        // Les serveurs suspects ne reçoivent pas de nouvelles partitions
+        List<SecondaryServerInfo> servers = new ArrayList<>();
+        for (SecondaryServerInfo server : secondaryServers) {
+            if (server.isAvailable()) {
+                servers.add(server);
+            }
+        }
+        if (servers.isEmpty()) {
+            updateLog("❌ Aucun serveur secondaire disponible pour le stockage");
+            return "ERREUR: aucun serveur secondaire disponible";
+        }
+        if (layout == null || layout.isEmpty()) {
+            layout = DEFAULT_LAYOUT;
+        }
+        // La somme de contrôle du fichier est calculée au passage et inscrite au catalogue
+        Checksum checksum = new CRC32C();
+        data = new CheckedInputStream(data, checksum);
+        String error;
+        if (layout.equals(FileCatalog.REPLICATION)) {
+            error = storeReplicated(fileName, fileSize, dataLength, data, servers, checksum);
+        } else if (layout.equals(FileCatalog.DEDUP)) {
+            error = storeDeduplicated(fileName, fileSize, dataLength, data, servers, checksum);
+        } else {
+            ErasureLayout erasureLayout;
+            try {
+                erasureLayout = ErasureLayout.parse(layout);
+            } catch (IllegalArgumentException e) {
+                erasureLayout = null;
+            }
+            if (erasureLayout == null) {
+                updateLog("❌ Disposition inconnue pour " + fileName + ": " + layout);
+                return "ERREUR: disposition inconnue: " + layout;
+            }
+            error = storeErasureCoded(fileName, fileSize, dataLength, data, servers, erasureLayout, checksum);
+        }
+        if (error == null) {
+            // L'ancienne version du fichier ne doit plus être servie depuis le cache
+            contentCache.invalidate(fileName);
+        }
+        return error;
+    }
+
+    // Les partitions sont lues une à une depuis le flux client mais envoyées en parallèle:
+    // chaque réplique consomme sa file de blocs dans le pool de transfert pendant que la lecture continue.
+    // Le fichier est découpé en blocs de PARTITION_SIZE octets, chacun répliqué indépendamment sur les premiers
+    // serveurs retenus de sa liste de préférence dans l'anneau (HashRing); l'envoi est validé
+    // dès que chaque partition a reçu WRITE_QUORUM accusés, les répliques restantes terminent ensuite.
+    // Une réplique en échec est recopiée depuis une réplique réussie du même bloc (retryBlock).
+    // Avec un CODEC, chaque partition est compressée une seule fois avant d'être répliquée (PartitionCodec);
+    // sa taille stockée n'est connue qu'à la fin et est inscrite au catalogue.
+    private String storeReplicated(String fileName, long fileSize, long dataLength, InputStream data,
+                                   List<SecondaryServerInfo> servers, Checksum checksum) throws IOException {
+        servers = PlacementPolicy.select(servers, dataLength * Math.min(REPLICATION_FACTOR, servers.size()) / servers.size());
+        if (servers.isEmpty()) {
+            return insufficientSpace(fileName);
+        }
+        int numPartitions = (int) Math.max(1, (dataLength + PARTITION_SIZE - 1) / PARTITION_SIZE);
+        String prefix = stagingPrefix(fileName);
+        int replication = Math.max(1, Math.min(REPLICATION_FACTOR, servers.size()));
+        int quorum = Math.max(1, Math.min(WRITE_QUORUM, replication));
+        servers = PlacementPolicy.avoidOverloaded(servers, replication);
+
+        List<List<SecondaryServerInfo>> placement = locate(servers, replication, numPartitions,
+                i -> prefix + ".part" + (i+1));
+        if (placement == null) {
             updateLog("❌ Aucun serveur secondaire disponible pour le stockage");
-            return;
+            return "ERREUR: aucun serveur secondaire disponible";
+        }
+        List<String> sizes = new ArrayList<>();
+        List<List<String>> replicaPaths = new ArrayList<>();
+        List<List<CompletableFuture<String>>> transfers = new ArrayList<>();
+        List<String> storedSizes = new ArrayList<>();
+        List<CompletableFuture<Long>> checksums = new ArrayList<>();
+        long storedBytes = 0;
+
+        IOException clientError = null;
+        for (int i = 0; i < numPartitions && clientError == null; i++) {
+            long length = Math.min(PARTITION_SIZE, dataLength - i * PARTITION_SIZE);
+            sizes.add(Long.toString(length));
+            String partitionName = prefix + ".part" + (i+1);
+            long announcedLength = CODEC != null ? -1 : length;
+
+            List<String> paths = new ArrayList<>();
+            List<CompletableFuture<String>> partitionTransfers = new ArrayList<>();
+            List<BlockingQueue<byte[]>> queues = new ArrayList<>();
+            CompletableFuture<Long> partitionChecksum = new CompletableFuture<>();
+            for (SecondaryServerInfo server : placement.get(i)) {
+                BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(PARTITION_QUEUE_CHUNKS);
+                queues.add(chunks);
+                paths.add(server.getStoragePath() + "/" + partitionName);
+                partitionTransfers.add(CompletableFuture.supplyAsync(
+                        () -> sendPartitionToSecondary(server, partitionName, announcedLength, chunks, partitionChecksum),
+                        partitionExecutor));
+            }
+            checksums.add(partitionChecksum);
+            replicaPaths.add(paths);
+            transfers.add(partitionTransfers);
+            try (PartitionCodec.Encoder encoder = CODEC != null ? CODEC.newEncoder() : null) {
+                readPartition(data, length, queues, encoder);
+                long stored = encoder != null ? encoder.getStoredBytes() : length;
+                storedSizes.add(Long.toString(stored));
+                storedBytes += stored;
+            } catch (IOException e) {
+                clientError = e;
+            }
+        }
+
+        List<String> failures = new ArrayList<>();
+        if (clientError != null) {
+            failures.add("flux client: " + clientError.getMessage());
+        }
+        for (int i = 0; i < transfers.size(); i++) {
+            String error = awaitQuorum(transfers.get(i), quorum);
+            if (error != null && clientError == null) {
+                error = retryBlock(prefix + ".part" + (i+1), servers, placement.get(i), replicaPaths.get(i),
+                        transfers.get(i), checksums.get(i), quorum, error);
+            }
+            if (error != null) {
+                failures.add(prefix + ".part" + (i+1) + " (" + error + ")");
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            updateLog("❌ Échec du stockage de " + fileName + ", partitions en échec: " + String.join(", ", failures));
+            // Les répliques encore en cours sont attendues pour ne pas laisser de partition derrière la suppression
+            transfers.forEach(partitionTransfers -> partitionTransfers.forEach(CompletableFuture::join));
+            replicaPaths.forEach(paths -> paths.forEach(this::replicateDeletion));
+            if (clientError != null) {
+                throw clientError;
+            }
+            return "ERREUR: partitions en échec: " + String.join(", ", failures);
+        }
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(FileCatalog.CHECKSUM, Long.toHexString(checksum.getValue()));
+        attributes.put(FileCatalog.PARTITION_CHECKSUMS, joinChecksums(checksums));
+        attributes.put(FileCatalog.PARTITION_SIZES, String.join("/", sizes));
+        if (CODEC != null) {
+            attributes.put(PartitionCodec.ATTRIBUTE, CODEC.getName());
+            attributes.put(PartitionCodec.STORED_SIZES, String.join("/", storedSizes));
+        }
+        try {
+            FileCatalog.Entry entry = new FileCatalog.Entry(fileName, fileSize, replicaPaths, attributes);
+            retirePrevious(catalog.put(entry), entry);
+        } catch (IOException e) {
+            updateLog("❌ Erreur d'enregistrement dans le catalogue: " + e.getMessage());
+            transfers.forEach(partitionTransfers -> partitionTransfers.forEach(CompletableFuture::join));
+            replicaPaths.forEach(paths -> paths.forEach(this::replicateDeletion));
+            return "ERREUR: enregistrement du fichier impossible";
+        }
+        // Une réplique qui échoue après la validation est retirée du catalogue; le rééquilibrage la recopie
+        for (int i = 0; i < transfers.size(); i++) {
+            for (int r = 0; r < transfers.get(i).size(); r++) {
+                String path = replicaPaths.get(i).get(r);
+                transfers.get(i).get(r).thenAccept(error -> {
+                    if (error != null) {
+                        dropReplica(fileName, path);
+                        scheduleRebalance();
+                    }
+                });
+            }
         }
+        String compression = CODEC == null ? "" : String.format(", %s: %.1f Mo stockés pour %.1f Mo",
+                CODEC.getName(), storedBytes / (1024.0 * 1024.0), dataLength / (1024.0 * 1024.0));
+        updateLog("✅ Fichier " + fileName + " téléchargé et partitionné avec succès (" + replication
+                + " réplique(s), quorum " + quorum + compression + ")");
+        updateServersTable();
+        return null;
+    }
+
+    // Préfixe des partitions d'un envoi, "<fichier>.<génération>": la version inscrite au catalogue garde les siennes,
+    // lisibles pendant l'envoi et intactes s'il échoue; elles ne sont libérées qu'après catalog.put (retirePrevious)
+    private static String stagingPrefix(String fileName) {
+        return fileName + "." + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
 
-        int partitionSize = (int) Math.ceil(fileData.length / (double) numPartitions);
-        
-        for (int i = 0; i < numPartitions; i++) {
-            SecondaryServerInfo server = secondaryServers.get(i);
-            int start = i * partitionSize;
-            int end = Math.min(start + partitionSize, fileData.length);
-            byte[] partition = Arrays.copyOfRange(fileData, start, end);
-            
-            sendPartitionToSecondary(server, fileName + ".part" + (i+1), partition);
+    // Serveurs de chaque clé key(0..count-1): les "width" premiers de sa liste de préférence parmi "servers"
+    // (disponibles, avec assez d'espace); null si l'anneau n'en fournit pas assez
+    private List<List<SecondaryServerInfo>> locate(List<SecondaryServerInfo> servers, int width, int count,
+                                                   IntFunction<String> key) {
+        Set<SecondaryServerInfo> accepted = Collections.newSetFromMap(new IdentityHashMap<>());
+        accepted.addAll(servers);
+        HashRing ring = this.ring;
+        List<List<SecondaryServerInfo>> placement = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<SecondaryServerInfo> located = ring.locate(key.apply(i), width, accepted);
+            if (located.size() < width) {
+                return null;
+            }
+            placement.add(located);
         }
+        return placement;
+    }
 
-        saveToStorage(fileName, fileSize, numPartitions);
-        updateLog("✅ Fichier " + fileName + " téléchargé et partitionné avec succès");
+    private String insufficientSpace(String fileName) {
+        updateLog("❌ Espace disque insuffisant sur les serveurs secondaires pour " + fileName);
+        return "ERREUR: espace disque insuffisant sur les serveurs secondaires";
     }
-    private void handleFileDownload(ObjectOutputStream out, String fileName) throws IOException {
+
+    // Les k+m fragments sont envoyés en parallèle à k+m secondaires distincts pendant la lecture du flux client,
+    // bande par bande. Le fichier est validé si au moins getWriteQuorum() fragments ont été stockés;
+    // les fragments en échec restent sans chemin dans le catalogue.
+    private String storeErasureCoded(String fileName, long fileSize, long dataLength, InputStream data,
+                                     List<SecondaryServerInfo> servers, ErasureLayout layout, Checksum checksum)
+            throws IOException {
+        int totalShards = layout.getTotalShards();
+        if (servers.size() < totalShards) {
+            updateLog("❌ " + totalShards + " serveurs secondaires requis pour " + layout + ", " + servers.size() + " connectés");
+            return "ERREUR: " + totalShards + " serveurs secondaires requis pour " + layout;
+        }
+
+        long shardSize = layout.getShardSize(dataLength);
+        servers = PlacementPolicy.avoidOverloaded(PlacementPolicy.select(servers, shardSize), totalShards);
+        // Fragments sur les k+m premiers serveurs retenus de la liste de préférence du fichier
+        List<List<SecondaryServerInfo>> placement = servers.size() < totalShards ? null
+                : locate(servers, totalShards, 1, i -> fileName + ".shards");
+        if (placement == null) {
+            return insufficientSpace(fileName);
+        }
+        servers = placement.get(0);
+        String prefix = stagingPrefix(fileName);
+        List<String> shardPaths = new ArrayList<>();
+        List<CompletableFuture<String>> transfers = new ArrayList<>();
+        List<CompletableFuture<Long>> shardChecksums = new ArrayList<>();
+        List<BlockingQueue<byte[]>> queues = new ArrayList<>();
+        for (int i = 0; i < totalShards; i++) {
+            SecondaryServerInfo server = servers.get(i);
+            String shardName = prefix + ".shard" + (i+1);
+            BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(PARTITION_QUEUE_CHUNKS);
+            CompletableFuture<Long> shardChecksum = new CompletableFuture<>();
+            queues.add(blocks);
+            shardChecksums.add(shardChecksum);
+            shardPaths.add(server.getStoragePath() + "/" + shardName);
+            transfers.add(CompletableFuture.supplyAsync(
+                    () -> sendPartitionToSecondary(server, shardName, shardSize, blocks, shardChecksum), partitionExecutor));
+        }
+
+        IOException clientError = null;
         try {
-            List<String> partitionPaths = new ArrayList<>();
-            int numPartitions = 0;
-            updateLog("📥 Téléchargement demandé: " + fileName);
+            encodeStripes(data, dataLength, layout, queues);
+        } catch (IOException e) {
+            clientError = e;
+        }
+
+        List<List<String>> replicas = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < totalShards; i++) {
+            String error = transfers.get(i).join();
+            if (error == null) {
+                replicas.add(List.of(shardPaths.get(i)));
+            } else {
+                replicas.add(List.of());
+                failures.add(prefix + ".shard" + (i+1) + " (" + error + ")");
+            }
+        }
+        int stored = totalShards - failures.size();
+
+        String error = null;
+        if (clientError != null) {
+            error = "flux client: " + clientError.getMessage();
+        } else if (stored < layout.getWriteQuorum()) {
+            error = "fragments stockés " + stored + "/" + totalShards + ", minimum " + layout.getWriteQuorum()
+                    + ": " + String.join(", ", failures);
+        } else {
+            try {
+                FileCatalog.Entry entry = new FileCatalog.Entry(fileName, fileSize, replicas,
+                        Map.of(FileCatalog.LAYOUT, layout.toString(),
+                                FileCatalog.CHECKSUM, Long.toHexString(checksum.getValue()),
+                                FileCatalog.PARTITION_CHECKSUMS, joinChecksums(shardChecksums)));
+                retirePrevious(catalog.put(entry), entry);
+            } catch (IOException e) {
+                updateLog("❌ Erreur d'enregistrement dans le catalogue: " + e.getMessage());
+                error = "enregistrement du fichier impossible";
+            }
+        }
+        if (error != null) {
+            updateLog("❌ Échec du stockage de " + fileName + ": " + error);
+            shardPaths.forEach(this::replicateDeletion);
+            if (clientError != null) {
+                throw clientError;
+            }
+            return "ERREUR: " + error;
+        }
 
-            try (BufferedReader reader = new BufferedReader(new FileReader(storageFile))) {
-                String line;
-                boolean foundFile = false;
-                while ((line = reader.readLine()) != null) {
-                    if (line.startsWith(fileName + ";")) {
-                        foundFile = true;
-                        String[] parts = line.split(";");
-                        numPartitions = Integer.parseInt(parts[2]);
-                        
-                        for (int i = 0; i < numPartitions; i++) {
-                            partitionPaths.add(reader.readLine());
+        if (!failures.isEmpty()) {
+            updateLog("⚠️ Fragments manquants pour " + fileName + ": " + String.join(", ", failures));
+        }
+        updateLog("✅ Fichier " + fileName + " téléchargé avec succès (" + layout + ", " + stored + "/" + totalShards
+                + " fragments)");
+        updateServersTable();
+        return null;
+    }
+
+    // Le flux client est découpé en blocs définis par leur contenu, nommés par leur empreinte SHA-256.
+    // Un bloc déjà stocké, pour ce fichier ou un autre, n'est pas renvoyé: le fichier référence ses emplacements.
+    // Un nouveau bloc est envoyé aux secondaires qui suivent son nom sur l'anneau (REPLICATION_FACTOR répliques)
+    // et doit être accusé par WRITE_QUORUM d'entre eux; seules les répliques réussies sont inscrites.
+    private String storeDeduplicated(String fileName, long fileSize, long dataLength, InputStream data,
+                                     List<SecondaryServerInfo> servers, Checksum checksum) throws IOException {
+        servers = PlacementPolicy.select(servers, dataLength * Math.min(REPLICATION_FACTOR, servers.size()) / servers.size());
+        if (servers.isEmpty()) {
+            return insufficientSpace(fileName);
+        }
+        int replication = Math.max(1, Math.min(REPLICATION_FACTOR, servers.size()));
+        int quorum = Math.max(1, Math.min(WRITE_QUORUM, replication));
+        Set<SecondaryServerInfo> accepted = Collections.newSetFromMap(new IdentityHashMap<>());
+        accepted.addAll(PlacementPolicy.avoidOverloaded(servers, replication));
+        ContentChunker chunker = new ContentChunker(data, dataLength);
+        Semaphore inFlight = new Semaphore(DEDUP_CHUNKS_IN_FLIGHT);
+
+        List<String> chunkNames = new ArrayList<>();
+        // Blocs référencés par le fichier (tous protégés par pinChunk): déjà stockés, ou envoyés par ce téléchargement
+        Map<String, List<String>> storedChunks = new HashMap<>();
+        Map<String, List<String>> sentPaths = new LinkedHashMap<>();
+        Map<String, List<CompletableFuture<String>>> transfers = new HashMap<>();
+        long reusedBytes = 0;
+
+        IOException clientError = null;
+        try {
+            byte[] chunk;
+            while ((chunk = chunker.next()) != null) {
+                String chunkName = ContentChunker.chunkName(chunk);
+                chunkNames.add(chunkName);
+                if (storedChunks.containsKey(chunkName) || sentPaths.containsKey(chunkName)) {
+                    reusedBytes += chunk.length;
+                    continue;
+                }
+                List<String> existing = catalog.pinChunk(chunkName);
+                if (existing != null) {
+                    storedChunks.put(chunkName, existing);
+                    reusedBytes += chunk.length;
+                    continue;
+                }
+
+                inFlight.acquire();
+                List<String> paths = new ArrayList<>();
+                List<CompletableFuture<String>> chunkTransfers = new ArrayList<>();
+                for (SecondaryServerInfo server : ring.locate(chunkName, replication, accepted)) {
+                    BlockingQueue<byte[]> content = new ArrayBlockingQueue<>(2);
+                    content.add(chunk);
+                    content.add(END_OF_PARTITION);
+                    long length = chunk.length;
+                    paths.add(server.getStoragePath() + "/" + chunkName);
+                    chunkTransfers.add(CompletableFuture.supplyAsync(
+                            () -> sendPartitionToSecondary(server, chunkName, length, content, null), partitionExecutor));
+                }
+                CompletableFuture.allOf(chunkTransfers.toArray(new CompletableFuture<?>[0]))
+                        .whenComplete((done, failure) -> inFlight.release());
+                sentPaths.put(chunkName, paths);
+                transfers.put(chunkName, chunkTransfers);
+            }
+        } catch (IOException e) {
+            clientError = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            clientError = new InterruptedIOException("Découpage du fichier interrompu");
+        }
+
+        List<String> failures = new ArrayList<>();
+        if (clientError != null) {
+            failures.add("flux client: " + clientError.getMessage());
+        }
+        for (Map.Entry<String, List<String>> sent : sentPaths.entrySet()) {
+            List<CompletableFuture<String>> chunkTransfers = transfers.get(sent.getKey());
+            List<String> acknowledged = new ArrayList<>();
+            List<String> errors = new ArrayList<>();
+            for (int r = 0; r < chunkTransfers.size(); r++) {
+                String error = chunkTransfers.get(r).join();
+                if (error == null) {
+                    acknowledged.add(sent.getValue().get(r));
+                } else {
+                    errors.add(error);
+                }
+            }
+            if (acknowledged.size() < quorum) {
+                failures.add(sent.getKey() + " (quorum non atteint: " + String.join(", ", errors) + ")");
+            }
+            storedChunks.put(sent.getKey(), acknowledged);
+        }
+
+        String error = null;
+        if (!failures.isEmpty()) {
+            error = "blocs en échec: " + String.join(", ", failures);
+        } else {
+            List<List<String>> replicas = new ArrayList<>(chunkNames.size());
+            for (String chunkName : chunkNames) {
+                replicas.add(storedChunks.get(chunkName));
+            }
+            try {
+                FileCatalog.Entry entry = new FileCatalog.Entry(fileName, fileSize, replicas,
+                        Map.of(FileCatalog.LAYOUT, FileCatalog.DEDUP,
+                                FileCatalog.CHECKSUM, Long.toHexString(checksum.getValue())));
+                FileCatalog.Entry previous = catalog.put(entry);
+                catalog.unpinChunks(storedChunks.keySet());
+                retirePrevious(previous, entry);
+            } catch (IOException e) {
+                updateLog("❌ Erreur d'enregistrement dans le catalogue: " + e.getMessage());
+                error = "enregistrement du fichier impossible";
+            }
+        }
+        if (error != null) {
+            updateLog("❌ Échec du stockage de " + fileName + ": " + error);
+            // Les blocs envoyés pour rien sont supprimés, sauf si un autre fichier les a référencés entre-temps
+            catalog.unpinChunks(storedChunks.keySet());
+            reclaimChunks(sentPaths);
+            if (clientError != null) {
+                throw clientError;
+            }
+            return "ERREUR: " + error;
+        }
+
+        updateLog("✅ Fichier " + fileName + " téléchargé avec succès (dedup, " + chunkNames.size() + " bloc(s), "
+                + sentPaths.size() + " nouveau(x), " + String.format("%.1f Mo", reusedBytes / (1024.0 * 1024.0))
+                + " déjà stockés)");
+        updateServersTable();
+        return null;
+    }
+
+    // Nouvelle version inscrite: les répliques de la précédente qu'elle ne reprend pas (partitions en trop,
+    // autre disposition) sont libérées une fois passées les lectures déjà commencées (releaseReplica)
+    private void retirePrevious(FileCatalog.Entry previous, FileCatalog.Entry current) {
+        if (previous == null) {
+            return;
+        }
+        if (previous.isDeduplicated()) {
+            // Les blocs partagés avec d'autres fichiers restent en place
+            reclaimChunks(FileCatalog.chunksOf(previous));
+            return;
+        }
+        Set<String> kept = new HashSet<>(current.getAllReplicas());
+        for (String path : previous.getAllReplicas()) {
+            if (!kept.contains(path)) {
+                releaseReplica(previous.getFileName(), path);
+            }
+        }
+    }
+
+    // Supprime des secondaires les blocs dédupliqués candidats que plus aucun fichier ne référence
+    private void reclaimChunks(Map<String, List<String>> candidates) {
+        Map<String, List<String>> claimed = catalog.claimUnreferencedChunks(candidates);
+        try {
+            claimed.values().forEach(paths -> paths.forEach(this::replicateDeletion));
+        } finally {
+            catalog.chunksReclaimed(claimed.keySet());
+        }
+        if (!claimed.isEmpty()) {
+            updateLog("🗑️ " + claimed.size() + " bloc(s) sans référence supprimé(s)");
+        }
+    }
+
+    // Découpe le flux client en bandes de k blocs, calcule les m blocs de parité de chaque bande
+    // et place chaque bloc dans la file de son fragment
+    private void encodeStripes(InputStream data, long dataLength, ErasureLayout layout,
+                               List<BlockingQueue<byte[]>> queues) throws IOException {
+        ReedSolomon coder = layout.getCoder();
+        int dataShards = layout.getDataShards();
+        try {
+            try {
+                long stripes = layout.getStripeCount(dataLength);
+                for (long stripe = 0; stripe < stripes; stripe++) {
+                    int blockLength = layout.getBlockLength(stripe, dataLength);
+                    long remaining = layout.getStripeDataLength(stripe, dataLength);
+                    byte[][] shards = new byte[layout.getTotalShards()][blockLength];
+                    for (int d = 0; d < dataShards && remaining > 0; d++) {
+                        int length = (int) Math.min(blockLength, remaining);
+                        if (data.readNBytes(shards[d], 0, length) < length) {
+                            throw new EOFException("Flux client interrompu avant la fin du fichier");
                         }
-                        break;
+                        remaining -= length;
+                    }
+                    coder.encodeParity(shards, blockLength);
+                    for (int i = 0; i < shards.length; i++) {
+                        queues.get(i).put(shards[i]);
                     }
                 }
-                
-                if (!foundFile) {
-                    throw new IOException("Fichier non trouvé");
+            } catch (IOException e) {
+                for (BlockingQueue<byte[]> blocks : queues) {
+                    blocks.put(ABORTED_PARTITION);
                 }
+                throw e;
+            }
+            for (BlockingQueue<byte[]> blocks : queues) {
+                blocks.put(END_OF_PARTITION);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Codage du fichier interrompu");
+        }
+    }
 
-            ByteArrayOutputStream combinedFile = new ByteArrayOutputStream();
-            for (String partitionPath : partitionPaths) {
-                byte[] partitionData = Files.readAllBytes(Paths.get(partitionPath));
-                combinedFile.write(partitionData);
+    // Attend "quorum" accusés parmi les répliques d'une partition, ou que le quorum devienne impossible.
+    // Renvoie null si le quorum est atteint, sinon les erreurs des répliques.
+    private String awaitQuorum(List<CompletableFuture<String>> replicas, int quorum) {
+        CompletableFuture<Void> decided = new CompletableFuture<>();
+        AtomicInteger acknowledged = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Queue<String> errors = new ConcurrentLinkedQueue<>();
+        for (CompletableFuture<String> replica : replicas) {
+            replica.thenAccept(error -> {
+                if (error == null) {
+                    if (acknowledged.incrementAndGet() >= quorum) {
+                        decided.complete(null);
+                    }
+                } else {
+                    errors.add(error);
+                    if (failed.incrementAndGet() > replicas.size() - quorum) {
+                        decided.complete(null);
+                    }
+                }
+            });
+        }
+        decided.join();
+        return acknowledged.get() >= quorum ? null : "quorum non atteint: " + String.join(", ", errors);
+    }
+
+    // Quorum manqué pour un bloc: ses répliques en échec sont recopiées, de secondaire à secondaire, depuis une
+    // réplique réussie vers les serveurs suivants de sa liste de préférence. Le bloc n'est perdu que si aucune
+    // réplique ne l'a reçu. "paths" et "transfers" sont mis à jour; renvoie null si le quorum est atteint.
+    private String retryBlock(String partitionName, List<SecondaryServerInfo> servers, List<SecondaryServerInfo> located,
+                              List<String> paths, List<CompletableFuture<String>> transfers,
+                              CompletableFuture<Long> checksum, int quorum, String error) {
+        transfers.forEach(CompletableFuture::join);
+        SecondaryServerInfo source = null;
+        int acknowledged = 0;
+        for (int r = 0; r < transfers.size(); r++) {
+            if (transfers.get(r).join() == null) {
+                source = located.get(r);
+                acknowledged++;
+            }
+        }
+        if (source == null) {
+            return error;
+        }
+        Set<SecondaryServerInfo> accepted = Collections.newSetFromMap(new IdentityHashMap<>());
+        accepted.addAll(servers);
+        accepted.removeAll(located);
+        Iterator<SecondaryServerInfo> replacements = ring.locate(partitionName, accepted.size(), accepted).iterator();
+        for (int r = 0; r < transfers.size() && acknowledged < quorum; r++) {
+            if (transfers.get(r).join() == null) {
+                continue;
             }
+            while (replacements.hasNext()) {
+                SecondaryServerInfo replacement = replacements.next();
+                if (replacement.isAvailable()
+                        && copyReplica(source, replacement, partitionName, checksum.getNow(-1L))) {
+                    updateLog("🔄 Partition " + partitionName + " recopiée sur le serveur " + replacement.getId());
+                    paths.set(r, replacement.getStoragePath() + "/" + partitionName);
+                    transfers.set(r, CompletableFuture.completedFuture(null));
+                    acknowledged++;
+                    break;
+                }
+            }
+        }
+        return acknowledged >= quorum ? null : error;
+    }
 
-            out.writeObject(combinedFile.toByteArray());
-            updateLog("✅ Fichier " + fileName + " envoyé avec succès");
+    // Valeur de l'attribut PARTITION_CHECKSUMS; une partition sans envoi réussi reste vide
+    private static String joinChecksums(List<CompletableFuture<Long>> checksums) {
+        List<String> values = new ArrayList<>(checksums.size());
+        for (CompletableFuture<Long> checksum : checksums) {
+            Long value = checksum.getNow(null);
+            values.add(value != null ? Long.toHexString(value) : "");
+        }
+        return String.join("/", values);
+    }
+
+    private void dropReplica(String fileName, String partitionPath) {
+        try {
+            catalog.dropReplica(fileName, partitionPath);
+            updateLog("⚠️ Réplique retirée du catalogue: " + partitionPath);
         } catch (IOException e) {
-            updateLog("❌ Erreur lors du téléchargement: " + e.getMessage());
-            out.writeObject(null);
+            updateLog("❌ Erreur d'enregistrement dans le catalogue: " + e.getMessage());
         }
     }
 
-    private void handleFileDelete(String fileName) {
+    // Copie "length" octets du flux client dans la file de chaque réplique de la partition, compressés par
+    // "encoder" s'il n'est pas null; en cas de coupure côté client, les envois en cours sont annulés
+    // pour que les secondaires ne gardent pas de partition tronquée
+    private void readPartition(InputStream data, long length, List<BlockingQueue<byte[]>> queues,
+                               PartitionCodec.Encoder encoder) throws IOException {
+        long remaining = length;
         try {
-            List<String> lines = new ArrayList<>(Files.readAllLines(storageFile.toPath()));
-            List<String> updatedLines = new ArrayList<>();
-            boolean found = false;
-            updateLog("🗑️ Suppression demandée: " + fileName);
-
-            for (int i = 0; i < lines.size(); i++) {
-                String line = lines.get(i);
-                if (line.startsWith(fileName + ";")) {
-                    found = true;
-                    String[] parts = line.split(";");
-                    int numPartitions = Integer.parseInt(parts[2]);
-                    i++; // Skip the next numPartitions lines
-                    for (int j = 0; j < numPartitions && i < lines.size(); j++, i++) {
-                        String partitionPath = lines.get(i);
-                        Files.deleteIfExists(Paths.get(partitionPath));
-                        replicateDeletion(partitionPath);
+            try {
+                while (remaining > 0) {
+                    byte[] buffer = new byte[(int) Math.min(ChunkedOutputStream.CHUNK_SIZE, remaining)];
+                    int n = data.readNBytes(buffer, 0, buffer.length);
+                    if (n < buffer.length) {
+                        throw new EOFException("Flux client interrompu avant la fin de la partition");
+                    }
+                    remaining -= n;
+                    byte[] block = encoder != null ? encoder.encode(buffer, n) : buffer;
+                    for (BlockingQueue<byte[]> chunks : queues) {
+                        chunks.put(block);
                     }
-                    i--; // Adjust for the loop increment
-                } else if (!found || !line.contains(fileName)) {
-                    updatedLines.add(line);
                 }
+            } catch (IOException e) {
+                for (BlockingQueue<byte[]> chunks : queues) {
+                    chunks.put(ABORTED_PARTITION);
+                }
+                throw e;
+            }
+            for (BlockingQueue<byte[]> chunks : queues) {
+                chunks.put(END_OF_PARTITION);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lecture de la partition interrompue");
+        }
+    }
+
+    // Ancien mode: le fichier complet est renvoyé en un seul byte[]
+    private void handleFileDownload(ObjectOutputStream out, String fileName) throws IOException {
+        try {
+            updateLog("📥 Téléchargement demandé: " + fileName);
+            FileCatalog.Entry entry = catalog.get(fileName);
+            if (entry == null) {
+                throw new IOException("Fichier non trouvé");
             }
 
-            Files.write(storageFile.toPath(), updatedLines);
-            updateLog("✅ Fichier supprimé avec succès: " + fileName);
+            ByteArrayOutputStream combinedFile = new ByteArrayOutputStream();
+            writeFileContent(entry, combinedFile);
+
+            out.writeObject(combinedFile.toByteArray());
+            updateLog("✅ Fichier " + fileName + " envoyé avec succès");
         } catch (IOException e) {
-            updateLog("❌ Erreur lors de la suppression: " + e.getMessage());
+            updateLog("❌ Erreur lors du téléchargement: " + e.getMessage());
+            out.writeObject(null);
         }
     }
 
-    private void sendPartitionToSecondary(SecondaryServerInfo server, String partitionName, byte[] partitionData) {
-        try (Socket socket = new Socket(server.getIp(), server.getPort());
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-            
-            out.writeObject("STORE_PARTITION");
-            out.writeObject(partitionName);
-            out.writeObject(partitionData);
-            
-            updateLog("📦 Partition " + partitionName + " envoyée au serveur " + server.getId());
+    // Mode flux: la taille est envoyée d'abord (-1 si absent) puis les partitions sont relayées
+    // dans l'ordre, bloc par bloc, au fur et à mesure qu'elles arrivent des secondaires
+    private void handleStreamDownload(ObjectOutputStream out, String fileName) throws IOException {
+        updateLog("📥 Téléchargement demandé: " + fileName);
+        FileCatalog.Entry entry = catalog.get(fileName);
+        if (entry == null) {
+            updateLog("❌ Erreur lors du téléchargement: Fichier non trouvé");
+            out.writeObject(-1L);
+            out.flush();
+            return;
+        }
+
+        out.writeObject(entry.getFileSize());
+        ChunkedOutputStream chunkOut = new ChunkedOutputStream(out);
+        try {
+            writeFileContent(entry, chunkOut);
         } catch (IOException e) {
-            updateLog("❌ Erreur lors de l'envoi de la partition au serveur " + server.getId() + ": " + e.getMessage());
+            updateLog("❌ Erreur lors du téléchargement: " + e.getMessage());
+            chunkOut.abort();
+            return;
         }
+        chunkOut.finish();
+        updateLog("✅ Fichier " + fileName + " envoyé avec succès");
     }
 
-    private void replicateDeletion(String partitionPath) {
-        for (SecondaryServerInfo server : secondaryServers) {
-            try (Socket socket = new Socket(server.getIp(), server.getPort());
-                 ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-
-                out.writeObject("DELETE_PARTITION");
-                out.writeObject(partitionPath);
-                updateLog("🗑️ Réplication de suppression sur le serveur " + server.getId());
+    // Réponse OK portant la taille puis contenu découpé, ou ERROR si le fichier est inconnu
+    private void handleBinaryDownload(Protocol.Connection connection, String fileName) throws IOException {
+        updateLog("📥 Téléchargement demandé: " + fileName);
+        FileCatalog.Entry entry = catalog.get(fileName);
+        if (entry == null) {
+            updateLog("❌ Erreur lors du téléchargement: Fichier non trouvé");
+            connection.send(Protocol.Message.error("Fichier non trouvé"));
+            return;
+        }
 
-            } catch (IOException e) {
-                updateLog("❌ Erreur de réplication de suppression: " + e.getMessage());
-            }
+        // La somme de contrôle permet au client de vérifier un téléchargement repris par DOWNLOAD_RANGE
+        connection.send(Protocol.Message.ok().putLong(entry.getFileSize()).putLong(entry.getChecksum()));
+        ChunkedOutputStream chunkOut = new ChunkedOutputStream(connection.out());
+        try {
+            writeFileContent(entry, chunkOut);
+        } catch (IOException e) {
+            updateLog("❌ Erreur lors du téléchargement: " + e.getMessage());
+            chunkOut.abort();
+            return;
         }
+        chunkOut.finish();
+        updateLog("✅ Fichier " + fileName + " envoyé avec succès");
     }
 
-    private void saveToStorage(String fileName, long fileSize, int numPartitions) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(storageFile, true))) {
-            writer.println(fileName + ";" + fileSize + ";" + numPartitions);
-            for (int i = 0; i < numPartitions; i++) {
-                writer.println(secondaryServers.get(i).getStoragePath() + "/" + fileName + ".part" + (i+1));
-            }
+    // Réponse OK portant le nombre d'octets de la plage, la taille et la somme de contrôle du fichier,
+    // puis le contenu découpé; "length" négatif: jusqu'à la fin
+    private void handleRangeDownload(Protocol.Connection connection, String fileName, long offset, long length)
+            throws IOException {
+        FileCatalog.Entry entry = catalog.get(fileName);
+        if (entry == null) {
+            updateLog("❌ Erreur lors de la lecture partielle: Fichier non trouvé");
+            connection.send(Protocol.Message.error("Fichier non trouvé"));
+            return;
+        }
+        if (offset < 0 || offset > entry.getFileSize()) {
+            connection.send(Protocol.Message.error("Plage invalide: " + offset + "/" + entry.getFileSize()));
+            return;
+        }
+        long count = length < 0 ? entry.getFileSize() - offset : Math.min(length, entry.getFileSize() - offset);
+        updateLog("📥 Lecture partielle demandée: " + fileName + " [" + offset + ", " + (offset + count) + ")");
+
+        connection.send(Protocol.Message.ok().putLong(count).putLong(entry.getFileSize()).putLong(entry.getChecksum()));
+        ChunkedOutputStream chunkOut = new ChunkedOutputStream(connection.out());
+        try {
+            writeFileRange(entry, offset, count, chunkOut);
         } catch (IOException e) {
-            updateLog("❌ Erreur d'enregistrement dans storage.txt: " + e.getMessage());
+            updateLog("❌ Erreur lors de la lecture partielle: " + e.getMessage());
+            chunkOut.abort();
+            return;
         }
+        chunkOut.finish();
     }
 
-    private void sendFileList(ObjectOutputStream out) throws IOException {
-        List<String> fileNames = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(storageFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.contains(";")) {
-                    String fileName = line.split(";")[0];
-                    fileNames.add(fileName);
+    // Les contenus sont lus un à un sur la connexion. Un petit fichier est gardé en mémoire et stocké en parallèle
+    // des suivants (BATCH_PARALLELISM à la fois); un plus gros est stocké depuis la connexion avant de continuer.
+    // Une seule réponse regroupe le résultat de chaque fichier.
+    private void handleUploadBatch(Protocol.Message request, Protocol.Connection connection) throws IOException {
+        int count = request.getInt();
+        String layout = request.getString();
+        List<String> fileNames = new ArrayList<>(count);
+        List<Long> fileSizes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fileNames.add(request.getString());
+            fileSizes.add(request.getLong());
+        }
+        updateLog("📤 Envoi groupé de " + count + " fichier(s)");
+        Semaphore slots = new Semaphore(BATCH_PARALLELISM);
+        List<CompletableFuture<String>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String fileName = fileNames.get(i);
+            long fileSize = fileSizes.get(i);
+            ChunkedInputStream data = new ChunkedInputStream(connection.in());
+            try {
+                if (fileSize < 0) {
+                    results.add(CompletableFuture.completedFuture("taille invalide: " + fileSize));
+                    continue;
+                }
+                if (fileSize > BATCH_BUFFER_SIZE) {
+                    String error = handleFileUpload(fileName, fileSize, fileSize, data, layout);
+                    results.add(CompletableFuture.completedFuture(error));
+                    continue;
+                }
+                byte[] content = data.readNBytes((int) fileSize);
+                if (content.length < fileSize) {
+                    results.add(CompletableFuture.completedFuture("flux client interrompu avant la fin du fichier"));
+                    continue;
+                }
+                acquireBatchSlot(slots);
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return handleFileUpload(fileName, fileSize, fileSize, new ByteArrayInputStream(content), layout);
+                    } catch (IOException e) {
+                        return e.getMessage();
+                    } finally {
+                        slots.release();
+                    }
+                }, partitionExecutor));
+            } catch (IOException e) {
+                // Fichier abandonné par le client (illisible de son côté): la connexion reste alignée sur le suivant
+                if (!data.isAborted()) {
+                    throw e;
                 }
+                results.add(CompletableFuture.completedFuture("transfert interrompu par le client"));
+            } finally {
+                data.drain();
             }
         }
-        out.writeObject(fileNames);
-        updateLog("📋 Liste des fichiers envoyée au client");
+        Protocol.Message reply = Protocol.Message.ok().putInt(count);
+        int stored = 0;
+        for (CompletableFuture<String> result : results) {
+            String error = result.join();
+            reply.putString(error == null ? "" : error);
+            if (error == null) {
+                stored++;
+            }
+        }
+        connection.send(reply);
+        updateLog("✅ Envoi groupé: " + stored + "/" + count + " fichier(s) stockés");
+    }
+
+    // Les fichiers sont lus BATCH_PARALLELISM à la fois, en avance sur leur transmission qui suit l'ordre demandé
+    private void handleDownloadBatch(Protocol.Message request, Protocol.Connection connection) throws IOException {
+        int count = request.getInt();
+        List<String> fileNames = new ArrayList<>(count);
+        List<FileCatalog.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fileNames.add(request.getString());
+            entries.add(catalog.get(fileNames.get(i)));
+        }
+        updateLog("📥 Téléchargement groupé de " + count + " fichier(s)");
+        ReadAhead[] readers = new ReadAhead[count];
+        int sent = 0;
+        try {
+            int next = 0;
+            for (int i = 0; i < count; i++) {
+                for (; next < count && next < i + BATCH_PARALLELISM; next++) {
+                    FileCatalog.Entry entry = entries.get(next);
+                    if (entry != null) {
+                        readers[next] = new ReadAhead(out -> writeFileContent(entry, out));
+                    }
+                }
+                FileCatalog.Entry entry = entries.get(i);
+                if (entry == null) {
+                    connection.send(Protocol.Message.error("Fichier non trouvé: " + fileNames.get(i)));
+                    continue;
+                }
+                connection.send(Protocol.Message.ok().putLong(entry.getFileSize()).putLong(entry.getChecksum()));
+                ChunkedOutputStream chunkOut = new ChunkedOutputStream(connection.out());
+                try {
+                    readers[i].transferTo(chunkOut);
+                } catch (IOException e) {
+                    updateLog("❌ Erreur lors du téléchargement de " + fileNames.get(i) + ": " + e.getMessage());
+                    chunkOut.abort();
+                    continue;
+                } finally {
+                    readers[i] = null;
+                }
+                chunkOut.finish();
+                sent++;
+            }
+        } finally {
+            for (ReadAhead reader : readers) {
+                if (reader != null) {
+                    reader.cancel();
+                }
+            }
+        }
+        updateLog("✅ Téléchargement groupé: " + sent + "/" + count + " fichier(s) envoyés");
+    }
+
+    private void handleDeleteBatch(Protocol.Message request, Protocol.Connection connection) throws IOException {
+        int count = request.getInt();
+        updateLog("🗑️ Suppression groupée de " + count + " fichier(s)");
+        Semaphore slots = new Semaphore(BATCH_PARALLELISM);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String fileName = request.getString();
+            acquireBatchSlot(slots);
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return handleFileDelete(fileName);
+                } finally {
+                    slots.release();
+                }
+            }, partitionExecutor));
+        }
+        Protocol.Message reply = Protocol.Message.ok().putInt(count);
+        int deleted = 0;
+        for (CompletableFuture<Boolean> result : results) {
+            boolean done = result.join();
+            reply.putString(done ? "" : "Fichier non trouvé");
+            if (done) {
+                deleted++;
+            }
+        }
+        connection.send(reply);
+        updateLog("✅ Suppression groupée: " + deleted + "/" + count + " fichier(s) supprimés");
+    }
+
+    private static void acquireBatchSlot(Semaphore slots) throws InterruptedIOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Opération groupée interrompue");
+        }
+    }
+
+    // Le fichier complet d'une session reprenable est stocké comme un envoi ordinaire, depuis le disque
+    // du serveur principal; en cas d'échec la session reste ouverte pour un nouvel essai
+    private void handleUploadCommit(Protocol.Connection connection, String uploadId, long checksum) throws IOException {
+        UploadSessions.Session session = uploadSessions.get(uploadId);
+        if (session == null) {
+            connection.send(Protocol.Message.error("Session de téléchargement inconnue"));
+            return;
+        }
+        String error;
+        try {
+            error = uploadSessions.beginCommit(session, checksum);
+            if (error == null) {
+                try (InputStream data = uploadSessions.openData(session)) {
+                    error = handleFileUpload(session.getFileName(), session.getSize(), session.getSize(), data,
+                            session.getLayout());
+                } catch (IOException e) {
+                    error = e.getMessage();
+                }
+                uploadSessions.endCommit(session, error == null);
+            }
+        } catch (IOException e) {
+            error = e.getMessage();
+        }
+        if (error != null) {
+            updateLog("❌ Échec de la validation du téléchargement de " + session.getFileName() + ": " + error);
+        }
+        connection.send(error == null ? Protocol.Message.ok() : Protocol.Message.error(error));
+    }
+
+    // Retrouve le secondaire d'après le répertoire de stockage inscrit dans storage.txt
+    private SecondaryServerInfo findServerForPartition(String partitionPath) {
+        String directory = FileCatalog.nodeOf(partitionPath);
+        for (SecondaryServerInfo server : secondaryServers) {
+            if (server.getStoragePath().equals(directory)) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    // Faux si le secondaire de la partition est inconnu ou suspect
+    private boolean isReachable(String partitionPath) {
+        SecondaryServerInfo server = findServerForPartition(partitionPath);
+        return server != null && server.isAvailable();
+    }
+
+    private void writeFileContent(FileCatalog.Entry entry, OutputStream dest) throws IOException {
+        writeFileRange(entry, 0, entry.getFileSize(), dest);
+    }
+
+    // Écrit les octets [offset, offset + length) du fichier depuis le cache s'il y est. Sinon la plage est lue
+    // sur les secondaires; un fichier lu en entier est copié au passage si le cache l'admet.
+    private void writeFileRange(FileCatalog.Entry entry, long offset, long length, OutputStream dest)
+            throws IOException {
+        if (length <= 0) {
+            return;
+        }
+        FileContentCache.Content cached = contentCache.get(entry);
+        if (cached != null) {
+            cached.writeTo(dest, offset, length);
+            return;
+        }
+        ByteBuffer content = length == entry.getFileSize() && contentCache.wouldAdmit(entry)
+                ? contentCache.allocate(length) : null;
+        if (content == null) {
+            readFileRange(entry, offset, length, dest);
+            return;
+        }
+        readFileRange(entry, offset, length, new CopyingOutputStream(dest, content));
+        // Fichier remplacé pendant la lecture: la copie ne correspond plus au catalogue
+        if (catalog.get(entry.getFileName()) == entry) {
+            contentCache.put(entry, content.flip());
+        }
+    }
+
+    // Recopie dans "copy" tout ce qui est écrit vers le client
+    private static class CopyingOutputStream extends FilterOutputStream {
+        private final ByteBuffer copy;
+
+        CopyingOutputStream(OutputStream out, ByteBuffer copy) {
+            super(out);
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy.put(b, off, len);
+        }
+    }
+
+    // Lit les octets [offset, offset + length) du fichier en ne lisant que les partitions qui les contiennent,
+    // et dans chacune seulement la partie utile. Une partition compressée n'a pas d'index de ses trames:
+    // elle est décodée depuis son début et sa lecture s'arrête dès la fin de la plage.
+    // Les READ_AHEAD_BLOCKS partitions suivantes sont lues en parallèle pendant que la courante est transmise.
+    private void readFileRange(FileCatalog.Entry entry, long offset, long length, OutputStream dest)
+            throws IOException {
+        if (entry.getErasureLayout() != null) {
+            readErasureCoded(entry, offset, length, dest);
+            return;
+        }
+        long end = offset + length;
+        // Partitions à lire: [indice, début, longueur] en octets stockés
+        List<long[]> reads = new ArrayList<>();
+        long skip = 0;
+        long partitionStart = 0;
+        for (int i = 0; i < entry.getPartitionCount() && partitionStart < end; i++) {
+            long partitionEnd = partitionStart + entry.getRawPartitionSize(i);
+            if (partitionEnd > offset) {
+                if (entry.getCodec() == null) {
+                    long from = Math.max(offset, partitionStart) - partitionStart;
+                    reads.add(new long[]{i, from, Math.min(end, partitionEnd) - partitionStart - from});
+                } else {
+                    if (reads.isEmpty()) {
+                        skip = offset - partitionStart;
+                    }
+                    reads.add(new long[]{i, 0, entry.getPartitionSize(i)});
+                }
+            }
+            partitionStart = partitionEnd;
+        }
+        PartitionCodec.Decoder decoder = entry.getCodec() != null && !reads.isEmpty()
+                ? new PartitionCodec.Decoder(new RangeOutputStream(dest, skip, length)) : null;
+        Deque<ReadAhead> pending = new ArrayDeque<>();
+        try {
+            int next = 0;
+            while (next < reads.size() || !pending.isEmpty()) {
+                while (next < reads.size() && pending.size() <= READ_AHEAD_BLOCKS) {
+                    long[] read = reads.get(next++);
+                    pending.add(new ReadAhead(out -> fetchPartition(entry, (int) read[0], read[1], read[2], out)));
+                }
+                pending.peek().transferTo(decoder != null ? decoder : dest);
+                pending.poll();
+            }
+            if (decoder != null) {
+                decoder.finish();
+            }
+        } catch (RangeComplete e) {
+            // Fin de la plage atteinte au milieu d'une partition compressée
+        } finally {
+            pending.forEach(ReadAhead::cancel);
+            if (decoder != null) {
+                decoder.close();
+            }
+        }
+    }
+
+    private interface ContentSource {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Lecture d'une partition ou d'un fichier dans le pool de transfert, par paquets gardés dans une file bornée
+    // jusqu'à ce que transferTo() les transmette
+    private class ReadAhead extends OutputStream {
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(PARTITION_QUEUE_CHUNKS);
+        private volatile IOException failure;
+        private volatile boolean cancelled;
+
+        ReadAhead(ContentSource source) {
+            partitionExecutor.execute(() -> {
+                byte[] last = END_OF_PARTITION;
+                try {
+                    source.writeTo(this);
+                } catch (IOException e) {
+                    failure = e;
+                    last = ABORTED_PARTITION;
+                }
+                try {
+                    enqueue(last);
+                } catch (InterruptedIOException e) {
+                    // Lecture abandonnée
+                }
+            });
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            enqueue(Arrays.copyOfRange(b, off, off + len));
+        }
+
+        private void enqueue(byte[] chunk) throws InterruptedIOException {
+            try {
+                do {
+                    if (cancelled) {
+                        throw new InterruptedIOException("Lecture abandonnée");
+                    }
+                } while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Lecture interrompue");
+            }
+        }
+
+        void transferTo(OutputStream dest) throws IOException {
+            try {
+                byte[] chunk;
+                while ((chunk = chunks.take()) != END_OF_PARTITION) {
+                    if (chunk == ABORTED_PARTITION) {
+                        throw failure;
+                    }
+                    dest.write(chunk);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Lecture interrompue");
+            }
+        }
+
+        // Le client est parti ou la plage est complète: la lecture en cours s'arrête à son prochain paquet
+        void cancel() {
+            cancelled = true;
+            chunks.clear();
+        }
+    }
+
+    // Ne transmet que "length" octets après en avoir ignoré "skip"; au-delà, RangeComplete interrompt la lecture
+    private static class RangeOutputStream extends FilterOutputStream {
+        private long skip;
+        private long remaining;
+
+        RangeOutputStream(OutputStream out, long skip, long length) {
+            super(out);
+            this.skip = skip;
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(skip, len);
+            skip -= skipped;
+            off += skipped;
+            len -= skipped;
+            if (len == 0) {
+                return;
+            }
+            int n = (int) Math.min(remaining, len);
+            out.write(b, off, n);
+            remaining -= n;
+            if (n < len) {
+                throw new RangeComplete();
+            }
+        }
+    }
+
+    private static class RangeComplete extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangeComplete() {
+            super("Fin de la plage demandée");
+        }
+    }
+
+    // Lit k fragments en parallèle, de préférence ceux de données pour éviter tout décodage.
+    // Un fragment absent, en erreur ou muet pendant SHARD_READ_TIMEOUT_MS est remplacé par un fragment
+    // de parité repris à la bande en cours; les blocs de données manquants sont alors reconstitués.
+    // Seules les bandes qui recouvrent [offset, offset + length) sont lues.
+    private void readErasureCoded(FileCatalog.Entry entry, long offset, long length, OutputStream dest)
+            throws IOException {
+        ErasureLayout layout = entry.getErasureLayout();
+        ReedSolomon coder = layout.getCoder();
+        int totalShards = layout.getTotalShards();
+        int dataShards = layout.getDataShards();
+        long fileSize = entry.getFileSize();
+        long stripeBytes = (long) dataShards * layout.getBlockSize();
+        long end = offset + length;
+
+        ShardStream[] streams = new ShardStream[totalShards];
+        boolean[] tried = new boolean[totalShards];
+        try {
+            long lastStripe = (end - 1) / stripeBytes;
+            // Les fragments ne sont lus que jusqu'au bloc de la dernière bande utile
+            long shardEnd = lastStripe * layout.getBlockSize() + layout.getBlockLength(lastStripe, fileSize);
+            for (long stripe = offset / stripeBytes; stripe <= lastStripe; stripe++) {
+                int blockLength = layout.getBlockLength(stripe, fileSize);
+                long shardOffset = stripe * layout.getBlockSize();
+                byte[][] shards = new byte[totalShards][];
+                boolean[] present = new boolean[totalShards];
+                int available = 0;
+                // Fragments déjà ouverts, puis fragments jamais essayés (données d'abord) pour compléter à k
+                for (int i = 0; i < totalShards; i++) {
+                    if (streams[i] != null && readShardBlock(entry, streams, i, shards, blockLength)) {
+                        present[i] = true;
+                        available++;
+                    }
+                }
+                // Premier passage sur les serveurs sains; les suspects ne servent qu'en dernier recours
+                for (int pass = 0; pass < 2 && available < dataShards; pass++) {
+                    for (int i = 0; i < totalShards && available < dataShards; i++) {
+                        if (streams[i] != null || tried[i]) {
+                            continue;
+                        }
+                        List<String> paths = entry.getReplicas(i);
+                        if (pass == 0 && !paths.isEmpty() && !isReachable(paths.get(0))) {
+                            continue;
+                        }
+                        tried[i] = true;
+                        streams[i] = openShard(entry, i, shardOffset, shardEnd - shardOffset);
+                        if (streams[i] != null && readShardBlock(entry, streams, i, shards, blockLength)) {
+                            present[i] = true;
+                            available++;
+                        }
+                    }
+                }
+                if (available < dataShards) {
+                    throw new IOException("Fragments disponibles insuffisants pour " + entry.getFileName()
+                            + ": " + available + "/" + dataShards);
+                }
+
+                boolean complete = true;
+                for (int d = 0; d < dataShards; d++) {
+                    if (!present[d]) {
+                        shards[d] = new byte[blockLength];
+                        complete = false;
+                    }
+                }
+                if (!complete) {
+                    coder.reconstructData(shards, present, blockLength);
+                }
+                long remaining = layout.getStripeDataLength(stripe, fileSize);
+                long position = stripe * stripeBytes;
+                for (int d = 0; d < dataShards && remaining > 0; d++) {
+                    int blockData = (int) Math.min(blockLength, remaining);
+                    long from = Math.max(position, offset);
+                    long to = Math.min(position + blockData, end);
+                    if (from < to) {
+                        dest.write(shards[d], (int) (from - position), (int) (to - from));
+                    }
+                    position += blockData;
+                    remaining -= blockData;
+                }
+            }
+            for (int i = 0; i < totalShards; i++) {
+                if (streams[i] != null) {
+                    boolean intact = streams[i].finish();
+                    streams[i] = null;
+                    if (!intact) {
+                        throw new IOException("Somme de contrôle incorrecte pour le fragment " + (i+1) + " de "
+                                + entry.getFileName());
+                    }
+                }
+            }
+        } finally {
+            for (ShardStream stream : streams) {
+                if (stream != null) {
+                    stream.close(false);
+                }
+            }
+        }
+    }
+
+    // Lit le bloc de la bande courante; en cas d'échec le fragment est fermé et ne sera plus utilisé
+    private boolean readShardBlock(FileCatalog.Entry entry, ShardStream[] streams, int index, byte[][] shards,
+                                   int blockLength) {
+        shards[index] = new byte[blockLength];
+        try {
+            streams[index].readBlock(shards[index], blockLength);
+            return true;
+        } catch (IOException e) {
+            updateLog("⚠️ Fragment " + (index+1) + " de " + entry.getFileName() + " indisponible: " + e.getMessage());
+            streams[index].close(false);
+            streams[index] = null;
+            shards[index] = null;
+            return false;
+        }
+    }
+
+    // Ouvre la lecture de "length" octets d'un fragment à partir de "offset"; null si le fragment est perdu ou injoignable
+    private ShardStream openShard(FileCatalog.Entry entry, int index, long offset, long length) {
+        List<String> paths = entry.getReplicas(index);
+        if (paths.isEmpty()) {
+            return null;
+        }
+        String shardPath = paths.get(0);
+        SecondaryServerInfo server = findServerForPartition(shardPath);
+        if (server == null) {
+            updateLog("⚠️ Aucun serveur secondaire connecté pour " + shardPath);
+            return null;
+        }
+        String shardName = shardPath.substring(shardPath.lastIndexOf('/') + 1);
+        SecondaryConnectionPool pool = server.getConnectionPool();
+        SecondaryConnectionPool.Session session = null;
+        try {
+            session = pool.borrow();
+            session.setReadTimeout(SHARD_READ_TIMEOUT_MS);
+            session.send(new Protocol.Message(Protocol.FETCH_PARTITION_RANGE)
+                    .putString(shardName).putLong(offset).putLong(length));
+            // Fragment lu en entier: comparé au CRC32C inscrit au catalogue
+            long expected = offset == 0 && length == entry.getPartitionSize(index) ? entry.getPartitionChecksum(index) : -1;
+            ShardStream stream = new ShardStream(pool, session, expected);
+            try {
+                session.expectOk();
+            } catch (Protocol.RemoteError e) {
+                stream.close(true);
+                updateLog("⚠️ Fragment " + shardPath + " indisponible: " + e.getMessage());
+                return null;
+            }
+            return stream;
+        } catch (IOException e) {
+            pool.invalidate(session);
+            updateLog("⚠️ Fragment " + shardPath + " indisponible: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Lecture en cours d'un fragment sur une session empruntée au pool du secondaire
+    private static class ShardStream {
+        private final SecondaryConnectionPool pool;
+        private final SecondaryConnectionPool.Session session;
+        private final ChunkedInputStream in;
+        private final long expectedChecksum;
+        private final CRC32C crc = new CRC32C();
+
+        ShardStream(SecondaryConnectionPool pool, SecondaryConnectionPool.Session session, long expectedChecksum) {
+            this.pool = pool;
+            this.session = session;
+            this.in = new ChunkedInputStream(session.in());
+            this.expectedChecksum = expectedChecksum;
+        }
+
+        void readBlock(byte[] block, int length) throws IOException {
+            if (in.readNBytes(block, 0, length) < length) {
+                throw new EOFException("Fragment plus court que prévu");
+            }
+            crc.update(block, 0, length);
+        }
+
+        // Le fragment a été lu jusqu'au bout: la session est rendue au pool si le flux se termine bien là.
+        // Renvoie false si le fragment ne correspond pas à sa somme de contrôle.
+        boolean finish() {
+            boolean ended;
+            try {
+                ended = in.read() == -1;
+            } catch (IOException e) {
+                ended = false;
+            }
+            close(ended);
+            return expectedChecksum < 0 || crc.getValue() == expectedChecksum;
+        }
+
+        void close(boolean reusable) {
+            if (reusable) {
+                try {
+                    session.setReadTimeout(0);
+                    pool.release(session);
+                    return;
+                } catch (IOException e) {
+                    // session inutilisable
+                }
+            }
+            pool.invalidate(session);
+        }
+    }
+
+    // Lit "length" octets stockés de la partition à partir de "start", sur une réplique tirée au hasard selon le
+    // poids de son serveur (PlacementPolicy) pour répartir les lectures entre les secondaires (les suspects en dernier). Si la réplique échoue (ou y détecte un bloc corrompu),
+    // la lecture reprend sur la suivante à partir du dernier octet transmis.
+    // Une partition lue en entier est de plus comparée au CRC32C inscrit au catalogue.
+    private void fetchPartition(FileCatalog.Entry entry, int index, long start, long length, OutputStream dest)
+            throws IOException {
+        List<String> replicas = entry.getReplicas(index);
+        long expected = start == 0 && length == entry.getPartitionSize(index) ? entry.getPartitionChecksum(index) : -1;
+        CRC32C crc = new CRC32C();
+        CountingOutputStream counted = new CountingOutputStream(expected >= 0 ? new CheckedOutputStream(dest, crc) : dest);
+        List<SecondaryServerInfo> owners = new ArrayList<>(replicas.size());
+        for (String partitionPath : replicas) {
+            owners.add(findServerForPartition(partitionPath));
+        }
+        int first = PlacementPolicy.pick(owners);
+        List<String> order = new ArrayList<>(replicas.size());
+        for (int k = 0; k < replicas.size(); k++) {
+            order.add(replicas.get((first + k) % replicas.size()));
+        }
+        order.sort(Comparator.comparing(path -> !isReachable(path)));
+        IOException lastError = null;
+        for (int k = 0; k < order.size() && counted.count < length; k++) {
+            String partitionPath = order.get(k);
+            try {
+                fetchPartitionFromSecondary(partitionPath, start + counted.count, length - counted.count, counted);
+            } catch (IOException e) {
+                if (counted.failed) {
+                    throw e;
+                }
+                lastError = e;
+                updateLog("⚠️ Réplique indisponible " + partitionPath + ": " + e.getMessage());
+            }
+        }
+        if (counted.count != length) {
+            throw lastError != null ? lastError
+                    : new IOException("Partition " + (index + 1) + " de " + entry.getFileName() + " incomplète");
+        }
+        if (expected >= 0 && crc.getValue() != expected) {
+            throw new IOException("Somme de contrôle incorrecte pour la partition " + (index + 1) + " de "
+                    + entry.getFileName());
+        }
+    }
+
+    private void fetchPartitionFromSecondary(String partitionPath, long offset, long length, OutputStream dest)
+            throws IOException {
+        SecondaryServerInfo server = findServerForPartition(partitionPath);
+        if (server == null) {
+            throw new IOException("Aucun serveur secondaire connecté pour " + partitionPath);
+        }
+        String partitionName = partitionPath.substring(partitionPath.lastIndexOf('/') + 1);
+
+        SecondaryConnectionPool pool = server.getConnectionPool();
+        SecondaryConnectionPool.Session session;
+        try {
+            session = pool.borrow();
+        } catch (IOException e) {
+            server.markUnreachable();
+            throw e;
+        }
+        boolean reusable = false;
+        try {
+            session.send(new Protocol.Message(Protocol.FETCH_PARTITION_RANGE)
+                    .putString(partitionName).putLong(offset).putLong(length));
+            long size;
+            try {
+                size = session.expectOk().getLong();
+            } catch (Protocol.RemoteError e) {
+                reusable = true;
+                throw new IOException(e.getMessage() + " (serveur " + server.getId() + ")");
+            }
+            long received = new ChunkedInputStream(session.in()).transferTo(dest);
+            if (received != size) {
+                throw new IOException("Partition " + partitionName + " incomplète: " + received + "/" + size + " octets");
+            }
+            reusable = true;
+        } finally {
+            if (reusable) {
+                pool.release(session);
+            } else {
+                pool.invalidate(session);
+            }
+        }
+    }
+
+    // Compte les octets transmis au client pour reprendre une partition sur une autre réplique;
+    // une erreur d'écriture vient du client et ne doit pas déclencher de nouvel essai
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+        private boolean failed;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            count += len;
+        }
+    }
+
+    // Renvoie true si le fichier existait et a été retiré du catalogue
+    private boolean handleFileDelete(String fileName) {
+        updateLog("🗑️ Suppression demandée: " + fileName);
+        FileCatalog.Entry entry;
+        try {
+            entry = catalog.remove(fileName);
+        } catch (IOException e) {
+            updateLog("❌ Erreur lors de la suppression: " + e.getMessage());
+            return false;
+        }
+        if (entry == null) {
+            updateLog("❌ Fichier à supprimer introuvable: " + fileName);
+            return false;
+        }
+        contentCache.invalidate(fileName);
+        if (entry.isDeduplicated()) {
+            // Les blocs partagés avec d'autres fichiers restent en place
+            reclaimChunks(FileCatalog.chunksOf(entry));
+        } else {
+            entry.getAllReplicas().forEach(this::replicateDeletion);
+        }
+        updateLog("✅ Fichier supprimé avec succès: " + fileName);
+        updateServersTable();
+        return true;
+    }
+
+    // Vide la file de blocs vers le secondaire puis attend son accusé de réception.
+    // En cas d'échec du secondaire, la file est tout de même vidée pour ne jamais bloquer la lecture client.
+    // Le CRC32C des blocs est calculé ici, dans le thread d'envoi et non dans celui qui lit le flux client,
+    // puis comparé à celui des octets écrits par le secondaire; en cas de succès il complète "checksum" (si non null).
+    // Renvoie null en cas de succès, sinon la cause de l'échec.
+    private String sendPartitionToSecondary(SecondaryServerInfo server, String partitionName, long length,
+                                            BlockingQueue<byte[]> chunks, CompletableFuture<Long> checksum) {
+        CRC32C crc = new CRC32C();
+        SecondaryConnectionPool pool = server.getConnectionPool();
+        SecondaryConnectionPool.Session session = null;
+        ChunkedOutputStream partitionOut = null;
+        String error = null;
+        // Débit du secondaire: seul le temps passé bloqué sur sa socket compte, pas l'attente du flux client
+        long sentBytes = 0;
+        long sendNanos = 0;
+        server.beginTransfer();
+        try {
+            session = pool.borrow();
+            new Protocol.Message(Protocol.STORE_PARTITION).putString(partitionName).putLong(length).writeTo(session.out());
+            partitionOut = new ChunkedOutputStream(session.out());
+        } catch (IOException e) {
+            // Secondaire injoignable: les envois suivants l'évitent sans attendre le prochain battement
+            server.markUnreachable();
+            error = e.getMessage();
+        }
+
+        boolean reusable = false;
+        try {
+            byte[] chunk;
+            while ((chunk = chunks.take()) != END_OF_PARTITION) {
+                if (chunk == ABORTED_PARTITION) {
+                    if (error == null) {
+                        error = "flux client interrompu";
+                    }
+                    break;
+                }
+                if (error == null) {
+                    try {
+                        crc.update(chunk);
+                        long start = System.nanoTime();
+                        partitionOut.write(chunk);
+                        sendNanos += System.nanoTime() - start;
+                        sentBytes += chunk.length;
+                    } catch (IOException e) {
+                        error = e.getMessage();
+                    }
+                }
+            }
+            if (error == null) {
+                long start = System.nanoTime();
+                partitionOut.finish();
+                try {
+                    Protocol.Message reply = session.expectOk();
+                    sendNanos += System.nanoTime() - start;
+                    if (reply.hasRemaining() && reply.getLong() != crc.getValue()) {
+                        error = "somme de contrôle des octets écrits différente de celle des octets envoyés";
+                    }
+                } catch (Protocol.RemoteError e) {
+                    error = e.getMessage();
+                }
+                reusable = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "transfert interrompu";
+        } catch (IOException e) {
+            error = e.getMessage();
+        } finally {
+            if (reusable) {
+                pool.release(session);
+            } else {
+                pool.invalidate(session);
+            }
+            server.endTransfer(error == null ? sentBytes : 0, sendNanos);
+        }
+
+        if (error == null) {
+            if (checksum != null) {
+                checksum.complete(crc.getValue());
+            }
+            updateLog("📦 Partition " + partitionName + " envoyée au serveur " + server.getId());
+        } else {
+            updateLog("❌ Erreur lors de l'envoi de la partition " + partitionName + " au serveur " + server.getId() + ": " + error);
+        }
+        return error;
+    }
+
+    // La suppression est envoyée au secondaire propriétaire, ou à tous s'il n'est plus connecté sous ce chemin
+    private void replicateDeletion(String partitionPath) {
+        SecondaryServerInfo owner = findServerForPartition(partitionPath);
+        List<SecondaryServerInfo> targets = owner != null ? List.of(owner) : secondaryServers;
+        for (SecondaryServerInfo server : targets) {
+            deletePartition(server, partitionPath);
+        }
+    }
+
+    // Le secondaire supprime la partition d'après son nom seul: faux si la suppression n'a pas abouti
+    private boolean deletePartition(SecondaryServerInfo server, String partitionPath) {
+        SecondaryConnectionPool pool = server.getConnectionPool();
+        SecondaryConnectionPool.Session session = null;
+        try {
+            session = pool.borrow();
+            session.send(new Protocol.Message(Protocol.DELETE_PARTITION).putString(partitionPath));
+            session.expectOk();
+            pool.release(session);
+            updateLog("🗑️ Réplication de suppression sur le serveur " + server.getId());
+            return true;
+        } catch (IOException e) {
+            pool.invalidate(session);
+            updateLog("❌ Erreur de réplication de suppression: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void lockFile(String fileName) throws InterruptedIOException {
+        synchronized (busyFiles) {
+            while (busyFiles.contains(fileName)) {
+                try {
+                    busyFiles.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Attente du fichier " + fileName + " interrompue");
+                }
+            }
+            busyFiles.add(fileName);
+        }
+    }
+
+    private boolean tryLockFile(String fileName) {
+        synchronized (busyFiles) {
+            return busyFiles.add(fileName);
+        }
+    }
+
+    private void unlockFile(String fileName) {
+        synchronized (busyFiles) {
+            busyFiles.remove(fileName);
+            busyFiles.notifyAll();
+        }
+    }
+
+    // Quelques secondes d'attente: les battements remontent l'espace libre du serveur qui vient d'arriver
+    private void scheduleRebalance() {
+        if (rebalanceScheduled.compareAndSet(false, true)) {
+            rebalanceExecutor.schedule(this::rebalance, REBALANCE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Ramène chaque partition répliquée sur ses serveurs cibles: les premiers de sa liste de préférence sur
+    // l'anneau qui ne sont pas hors ligne et ont assez d'espace. Une cible manquante reçoit une copie directe
+    // depuis une réplique joignable, puis le catalogue échange en une écriture la réplique en trop contre la copie.
+    // Les partitions d'un fichier en cours d'envoi, ou dont une cible est suspecte ou surchargée, attendent
+    // le passage suivant.
+    // Les fichiers dédupliqués (blocs partagés) et en codage d'effacement restent en place.
+    private void rebalance() {
+        rebalanceScheduled.set(false);
+        List<SecondaryServerInfo> online = new ArrayList<>();
+        for (SecondaryServerInfo server : secondaryServers) {
+            if (!isOffline(server)) {
+                online.add(server);
+            }
+        }
+        if (online.isEmpty()) {
+            return;
+        }
+        // Une cible surchargée ne reçoit pas de copie: les écritures l'évitent aussi (avoidOverloaded)
+        Set<SecondaryServerInfo> idle = Collections.newSetFromMap(new IdentityHashMap<>());
+        idle.addAll(PlacementPolicy.avoidOverloaded(online, 0));
+        int moved = 0;
+        long copiedBytes = 0;
+        for (String fileName : catalog.listFileNames()) {
+            for (int index = 0; ; index++) {
+                FileCatalog.Entry entry = catalog.get(fileName);
+                if (entry == null || entry.isDeduplicated() || entry.getErasureLayout() != null
+                        || index >= entry.getPartitionCount()) {
+                    break;
+                }
+                if (!tryLockFile(fileName)) {
+                    break;
+                }
+                try {
+                    int copies = rebalancePartition(entry, index, online, idle);
+                    moved += copies;
+                    copiedBytes += copies * entry.getPartitionSize(index);
+                } finally {
+                    unlockFile(fileName);
+                }
+            }
+        }
+        if (moved > 0) {
+            updateLog("⚖️ Rééquilibrage: " + moved + " réplique(s) déplacée(s), " +
+                    String.format("%.1f", copiedBytes / (1024.0 * 1024.0)) + " Mo copiés");
+            updateServersTable();
+        }
+    }
+
+    // Nombre de répliques copiées sur leur cible pour la partition "index"
+    private int rebalancePartition(FileCatalog.Entry entry, int index, List<SecondaryServerInfo> online,
+                                   Set<SecondaryServerInfo> idle) {
+        String fileName = entry.getFileName();
+        List<String> replicas = entry.getReplicas(index);
+        if (replicas.isEmpty()) {
+            return 0;
+        }
+        String partitionName = replicas.get(0).substring(replicas.get(0).lastIndexOf('/') + 1);
+        Set<SecondaryServerInfo> accepted = Collections.newSetFromMap(new IdentityHashMap<>());
+        accepted.addAll(PlacementPolicy.select(online, entry.getPartitionSize(index)));
+        // Un serveur qui détient déjà la partition reste admis: elle n'y prend pas de place en plus
+        for (String path : replicas) {
+            SecondaryServerInfo owner = findServerForPartition(path);
+            if (owner != null && online.contains(owner)) {
+                accepted.add(owner);
+            }
+        }
+        List<SecondaryServerInfo> targets = ring.locate(partitionName, Math.min(REPLICATION_FACTOR, accepted.size()), accepted);
+        for (SecondaryServerInfo target : targets) {
+            if (!target.isAvailable() || !idle.contains(target)) {
+                return 0;
+            }
+        }
+        int copies = 0;
+        for (SecondaryServerInfo target : targets) {
+            String targetPath = target.getStoragePath() + "/" + partitionName;
+            if (replicas.contains(targetPath)) {
+                continue;
+            }
+            // Source: une réplique joignable. Réplique remplacée: hors des cibles, de préférence injoignable;
+            // aucune s'il manque des répliques (retirées du catalogue après un échec), la copie s'ajoute alors
+            boolean complete = replicas.size() >= targets.size();
+            SecondaryServerInfo source = null;
+            String removed = null;
+            for (String path : replicas) {
+                SecondaryServerInfo owner = findServerForPartition(path);
+                if (source == null && owner != null && owner.isAvailable()) {
+                    source = owner;
+                }
+                if (complete && (owner == null || !targets.contains(owner))
+                        && (removed == null || owner == null || !owner.isAvailable())) {
+                    removed = path;
+                }
+            }
+            if (source == null) {
+                updateLog("⚠️ Rééquilibrage: aucune réplique joignable pour " + partitionName);
+                return copies;
+            }
+            if (!copyReplica(source, target, partitionName, entry.getPartitionChecksum(index))) {
+                return copies;
+            }
+            boolean committed;
+            try {
+                committed = catalog.moveReplica(entry, index, removed, targetPath);
+            } catch (IOException e) {
+                updateLog("❌ Erreur d'enregistrement dans le catalogue: " + e.getMessage());
+                committed = false;
+            }
+            if (!committed) {
+                // Toujours sous le verrou du fichier: la copie n'est référencée nulle part
+                replicateDeletion(targetPath);
+                return copies;
+            }
+            copies++;
+            if (removed != null) {
+                releaseReplica(fileName, removed);
+            }
+            entry = catalog.get(fileName);
+            replicas = entry.getReplicas(index);
+        }
+        return copies;
+    }
+
+    // Le secondaire cible lit la partition directement sur le secondaire source
+    private boolean copyReplica(SecondaryServerInfo source, SecondaryServerInfo target, String partitionName,
+                                long expectedChecksum) {
+        SecondaryConnectionPool pool = target.getConnectionPool();
+        SecondaryConnectionPool.Session session = null;
+        try {
+            session = pool.borrow();
+            session.send(new Protocol.Message(Protocol.COPY_PARTITION).putString(partitionName)
+                    .putString(source.getIp()).putInt(source.getPort()).putLong(REBALANCE_BYTES_PER_SECOND));
+            long checksum;
+            try {
+                checksum = session.expectOk().getLong();
+            } catch (Protocol.RemoteError e) {
+                pool.release(session);
+                updateLog("❌ Copie de " + partitionName + " vers le serveur " + target.getId() + " refusée: " + e.getMessage());
+                return false;
+            }
+            pool.release(session);
+            if (expectedChecksum >= 0 && checksum != expectedChecksum) {
+                updateLog("❌ Somme de contrôle invalide pour la copie de " + partitionName + " sur le serveur " + target.getId());
+                replicateDeletion(target.getStoragePath() + "/" + partitionName);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            pool.invalidate(session);
+            updateLog("❌ Erreur de copie de " + partitionName + " vers le serveur " + target.getId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // L'ancienne réplique reste lisible le temps que les lectures commencées avant le déplacement se terminent;
+    // elle n'est supprimée que si le catalogue ne la référence plus (le fichier a pu être renvoyé entre-temps).
+    // Les autres répliques de la partition portent le même nom: la suppression ne va qu'au serveur de celle-ci,
+    // jamais à tous. Serveur inconnu ou injoignable: elle attend son retour (releasePending).
+    private void releaseReplica(String fileName, String partitionPath) {
+        rebalanceExecutor.schedule(() -> {
+            if (!tryLockFile(fileName)) {
+                releaseReplica(fileName, partitionPath);
+                return;
+            }
+            try {
+                FileCatalog.Entry entry = catalog.get(fileName);
+                if (entry != null && entry.getAllReplicas().contains(partitionPath)) {
+                    return;
+                }
+                SecondaryServerInfo owner = findServerForPartition(partitionPath);
+                if (owner == null || !deletePartition(owner, partitionPath)) {
+                    pendingReleases.put(partitionPath, fileName);
+                    updateLog("⚠️ Suppression de " + partitionPath + " reportée au retour de son serveur");
+                }
+            } finally {
+                unlockFile(fileName);
+            }
+        }, REPLICA_RELEASE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Le serveur de "storagePath" s'inscrit ou redevient joignable: les répliques libérées pendant son absence
+    // lui sont supprimées
+    private void releasePending(String storagePath) {
+        pendingReleases.forEach((partitionPath, fileName) -> {
+            if (FileCatalog.nodeOf(partitionPath).equals(storagePath)
+                    && pendingReleases.remove(partitionPath, fileName)) {
+                releaseReplica(fileName, partitionPath);
+            }
+        });
+    }
+
+    private List<String> listFiles() {
+        return catalog.listFileNames();
+    }
+
+    // Battement de chaque secondaire, un PING sur une session du pool; l'état observé est ensuite affiché
+    private void sendHeartbeats() {
+        for (SecondaryServerInfo server : secondaryServers) {
+            if (server.beginHeartbeat()) {
+                partitionExecutor.execute(() -> {
+                    try {
+                        heartbeat(server);
+                    } finally {
+                        server.endHeartbeat();
+                    }
+                });
+            }
+            String state = serverState(server);
+            String previous = serverStates.put(server.getId(), state);
+            if (previous != null && !previous.equals(state)) {
+                updateLog(state.startsWith("Connecté")
+                        ? "✅ Serveur secondaire " + server.getId() + " de nouveau joignable"
+                        : "⚠️ Serveur secondaire " + server.getId() + ": " + state + ", exclu du placement");
+                if (isOffline(server)) {
+                    // Ses partitions sont recopiées sur les serveurs suivants de l'anneau
+                    scheduleRebalance();
+                } else if (state.startsWith("Connecté")) {
+                    releasePending(server.getStoragePath());
+                }
+            }
+        }
+        updateServersTable();
+    }
+
+    private void heartbeat(SecondaryServerInfo server) {
+        SecondaryConnectionPool pool = server.getConnectionPool();
+        SecondaryConnectionPool.Session session = null;
+        try {
+            session = pool.borrow();
+            long start = System.nanoTime();
+            session.setReadTimeout(HEARTBEAT_TIMEOUT_MS);
+            session.send(new Protocol.Message(Protocol.PING));
+            Protocol.Message reply = session.expectOk();
+            server.recordHeartbeat((System.nanoTime() - start) / 1e6);
+            server.readStats(reply);
+            session.setReadTimeout(0);
+            pool.release(session);
+        } catch (IOException e) {
+            pool.invalidate(session);
+            server.markUnreachable();
+        }
+    }
+
+    private String serverState(SecondaryServerInfo server) {
+        if (server.isAvailable()) {
+            return "Connecté ✅";
+        }
+        return isOffline(server) ? "Hors ligne ❌" : "Suspect ⚠️";
+    }
+
+    private boolean isOffline(SecondaryServerInfo server) {
+        return !server.isAvailable()
+                && System.currentTimeMillis() - server.getFailureDetector().getLastHeartbeat() > OFFLINE_AFTER_MS;
     }
 
     private void updateServersTable() {
         SwingUtilities.invokeLater(() -> {
             tableModel.setRowCount(0);
             for (SecondaryServerInfo server : secondaryServers) {
+                FileCatalog.NodeUsage usage = catalog.getNodeUsage(server.getStoragePath());
+                String state = serverState(server);
+                if (!server.isAvailable()) {
+                    long silence = System.currentTimeMillis() - server.getFailureDetector().getLastHeartbeat();
+                    state += " (vu il y a " + silence / 1000 + " s)";
+                }
+                double latency = server.getLatencyMs();
+                String free = server.getTotalBytes() <= 0 ? "—" : String.format("%.1f Go (%.0f%%)",
+                        server.getUsableBytes() / (1024.0 * 1024.0 * 1024.0),
+                        100.0 * server.getUsableBytes() / server.getTotalBytes());
+                String load = server.getLoad() + " transfert(s)" + (server.getBandwidth() < 0 ? ""
+                        : String.format(", %.1f Mo/s", server.getBandwidth() / (1024.0 * 1024.0)));
                 tableModel.addRow(new Object[]{
                     server.getId(),
                     server.getIp(),
                     server.getPort(),
                     server.getStoragePath(),
-                    "Connecté ✅"
+                    usage.getPartitionCount(),
+                    String.format("%.1f Mo", usage.getBytes() / (1024.0 * 1024.0)),
+                    free,
+                    load,
+                    latency < 0 ? "—" : String.format("%.1f ms", latency),
+                    state
                 });
             }
         });
@@ -390,8 +2426,8 @@ public class MainServer extends JFrame {
     protected void processWindowEvent(WindowEvent e) {
         if (e.getID() == WindowEvent.WINDOW_CLOSING) {
             try {
-                if (serverSocket != null && !serverSocket.isClosed()) {
-                    serverSocket.close();
+                if (connectionServer != null) {
+                    connectionServer.close();
                 }
             } catch (IOException ex) {
                 ex.printStackTrace();
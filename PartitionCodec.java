@@ -0,0 +1,239 @@
+import java.io.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Compression des partitions bloc par bloc. Partition compressée: suite de trames indépendantes
+// [byte méthode][int taille d'origine][int taille stockée][octets], la méthode étant STORED ou DEFLATED.
+// Le premier bloc de chaque partition sert d'échantillon: s'il se compresse mal (média, archive...),
+// toute la partition est stockée telle quelle sans autre tentative de compression.
+public class PartitionCodec {
+    // Attributs du catalogue: nom du codec et tailles stockées des partitions ("t1/t2/...")
+    public static final String ATTRIBUTE = "codec";
+    public static final String STORED_SIZES = "stored";
+    public static final String NONE = "none";
+    static final byte STORED = 0;
+    static final byte DEFLATED = 1;
+    static final int FRAME_HEADER_SIZE = 9;
+    // Un bloc d'origine ne dépasse jamais cette taille, ce qui borne la mémoire du décodage
+    private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+    // L'échantillon doit gagner au moins 10% pour que la partition soit compressée
+    private static final double SAMPLE_MAX_RATIO = 0.9;
+
+    private final String name;
+    private final int level;
+
+    private PartitionCodec(String name, int level) {
+        this.name = name;
+        this.level = level;
+    }
+
+    // "deflate-fast" (rapide) ou "deflate-high" (meilleur taux); null pour "none"
+    public static PartitionCodec forName(String name) {
+        if (name == null || name.equals(NONE)) {
+            return null;
+        }
+        switch (name) {
+            case "deflate-fast":
+                return new PartitionCodec(name, Deflater.BEST_SPEED);
+            case "deflate-high":
+                return new PartitionCodec(name, Deflater.BEST_COMPRESSION);
+            default:
+                throw new IllegalArgumentException("Codec inconnu: " + name);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Un encodeur par partition; à fermer pour libérer la mémoire native du Deflater
+    public Encoder newEncoder() {
+        return new Encoder(level);
+    }
+
+    public static class Encoder implements Closeable {
+        private final Deflater deflater;
+        private Boolean compressible;
+        private byte[] output = new byte[0];
+        private long storedBytes;
+
+        private Encoder(int level) {
+            this.deflater = new Deflater(level);
+        }
+
+        // Trame correspondant au bloc; STORED si la compression ne fait rien gagner
+        public byte[] encode(byte[] block, int length) {
+            int compressed = -1;
+            if (compressible == null || compressible) {
+                compressed = deflate(block, length);
+                if (compressible == null) {
+                    compressible = compressed >= 0 && compressed <= length * SAMPLE_MAX_RATIO;
+                }
+            }
+            byte[] frame;
+            if (compressed >= 0) {
+                frame = frame(DEFLATED, length, output, compressed);
+            } else {
+                frame = frame(STORED, length, block, length);
+            }
+            storedBytes += frame.length;
+            return frame;
+        }
+
+        // Taille compressée, ou -1 si elle atteint la taille d'origine
+        private int deflate(byte[] block, int length) {
+            if (output.length < length) {
+                output = new byte[length];
+            }
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished() && n < length) {
+                n += deflater.deflate(output, n, length - n);
+            }
+            return deflater.finished() && n < length ? n : -1;
+        }
+
+        private static byte[] frame(byte method, int rawLength, byte[] data, int storedLength) {
+            byte[] frame = new byte[FRAME_HEADER_SIZE + storedLength];
+            frame[0] = method;
+            putInt(frame, 1, rawLength);
+            putInt(frame, 5, storedLength);
+            System.arraycopy(data, 0, frame, FRAME_HEADER_SIZE, storedLength);
+            return frame;
+        }
+
+        // Octets stockés depuis la création de l'encodeur, en-têtes compris
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+
+        public boolean isCompressing() {
+            return Boolean.TRUE.equals(compressible);
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+
+    // Reçoit les octets stockés (une ou plusieurs partitions à la suite) et écrit les octets d'origine dans "out".
+    // finish() vérifie qu'aucune trame n'est restée incomplète et libère l'Inflater; "out" n'est pas fermé.
+    public static class Decoder extends OutputStream {
+        private final OutputStream out;
+        private final Inflater inflater = new Inflater();
+        private final byte[] header = new byte[FRAME_HEADER_SIZE];
+        private int headerFill;
+        private byte[] payload = new byte[0];
+        private byte[] raw = new byte[0];
+        private int payloadLength = -1;
+        private int payloadFill;
+        private int rawLength;
+        private byte method;
+
+        public Decoder(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n;
+                if (payloadLength < 0) {
+                    n = Math.min(len, FRAME_HEADER_SIZE - headerFill);
+                    System.arraycopy(b, off, header, headerFill, n);
+                    headerFill += n;
+                    if (headerFill == FRAME_HEADER_SIZE) {
+                        startFrame();
+                    }
+                } else {
+                    n = Math.min(len, payloadLength - payloadFill);
+                    System.arraycopy(b, off, payload, payloadFill, n);
+                    payloadFill += n;
+                }
+                off += n;
+                len -= n;
+                if (payloadLength >= 0 && payloadFill == payloadLength) {
+                    endFrame();
+                }
+            }
+        }
+
+        private void startFrame() throws IOException {
+            method = header[0];
+            rawLength = getInt(header, 1);
+            payloadLength = getInt(header, 5);
+            if ((method != STORED && method != DEFLATED) || rawLength < 0 || rawLength > MAX_FRAME_SIZE
+                    || payloadLength < 0 || payloadLength > rawLength
+                    || (method == STORED && payloadLength != rawLength)) {
+                throw new IOException("Trame de partition compressée invalide");
+            }
+            if (payload.length < payloadLength) {
+                payload = new byte[payloadLength];
+            }
+            payloadFill = 0;
+        }
+
+        private void endFrame() throws IOException {
+            if (method == STORED) {
+                out.write(payload, 0, payloadLength);
+            } else {
+                if (raw.length < rawLength) {
+                    raw = new byte[rawLength];
+                }
+                inflater.reset();
+                inflater.setInput(payload, 0, payloadLength);
+                int n = 0;
+                try {
+                    while (n < rawLength && !inflater.finished()) {
+                        int inflated = inflater.inflate(raw, n, rawLength - n);
+                        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        n += inflated;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Trame de partition compressée corrompue: " + e.getMessage());
+                }
+                if (n != rawLength || !inflater.finished()) {
+                    throw new IOException("Trame de partition compressée corrompue");
+                }
+                out.write(raw, 0, rawLength);
+            }
+            headerFill = 0;
+            payloadLength = -1;
+        }
+
+        public void finish() throws IOException {
+            close();
+            if (headerFill > 0 || payloadLength >= 0) {
+                throw new IOException("Partition compressée tronquée");
+            }
+        }
+
+        // Libère l'Inflater sans vérifier la dernière trame (lecture abandonnée en cours de partition)
+        @Override
+        public void close() {
+            inflater.end();
+        }
+    }
+
+    private static void putInt(byte[] b, int off, int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,562 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Stockage des partitions sur un serveur secondaire, partagé par toutes les variantes du serveur
+public class PartitionStore {
+    // Connexions traitées simultanément par le serveur secondaire
+    public static final int MAX_WORKERS = Integer.getInteger("secondary.maxWorkers", 32);
+    public static final int MAX_CONNECTIONS = Integer.getInteger("secondary.maxConnections", 1024);
+    // Volume de partitions en cours de réception ou d'envoi au-delà duquel les nouveaux transferts attendent
+    private static final int MAX_IN_FLIGHT_KB = Integer.getInteger("secondary.maxInFlightMb", 256) * 1024;
+    private static final long IN_FLIGHT_WAIT_SECONDS = 30;
+    // Chaque partition a ses sommes CRC32C par bloc de CHECKSUM_BLOCK_SIZE octets dans "<partition>.crc",
+    // vérifiées à chaque lecture; une partition corrompue est renommée en "<partition>.corrupt"
+    static final int CHECKSUM_BLOCK_SIZE = ChunkedOutputStream.CHUNK_SIZE;
+    private static final String CHECKSUM_SUFFIX = ".crc";
+    private static final String QUARANTINE_SUFFIX = ".corrupt";
+    // Les blocs sont lus et vérifiés par paquets avant de partir sur la socket
+    private static final int VERIFIED_READ_SIZE = 16 * CHECKSUM_BLOCK_SIZE;
+    // Vérification de fond: débit de relecture plafonné pour ne pas concurrencer les transferts
+    private static final long SCRUB_BYTES_PER_SECOND = Long.getLong("secondary.scrubMbPerSec", 8) * 1024 * 1024;
+    private static final long SCRUB_INTERVAL_SECONDS = Long.getLong("secondary.scrubIntervalSeconds", 3600);
+    private static final int LOCK_STRIPES = 64;
+    private static final int COPY_CONNECT_TIMEOUT_MS = 3_000;
+
+    private final Path storageDir;
+    private final Consumer<String> logger;
+    private final Semaphore inFlightKb = new Semaphore(MAX_IN_FLIGHT_KB, true);
+    // Partitions en cours de réception ou d'envoi, remontées au serveur principal avec l'espace disque
+    private final AtomicInteger activeTransfers = new AtomicInteger();
+    // Une partition et ses sommes de contrôle sont remplacées et ouvertes ensemble sous le verrou de leur nom
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ThreadLocal<ByteBuffer> readBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(VERIFIED_READ_SIZE));
+
+    public PartitionStore(String storagePath, Consumer<String> logger) {
+        this.storageDir = Paths.get(storagePath);
+        this.logger = logger;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Partition ouverte avec les sommes de contrôle lues au même instant
+    private static class StoredPartition implements Closeable {
+        private final Path path;
+        private final FileChannel file;
+        // null: partition stockée avant l'ajout des sommes de contrôle, servie sans vérification
+        private final int[] checksums;
+        // Identité du fichier, pour ne pas mettre en quarantaine une partition remplacée entre-temps
+        private final Object version;
+
+        StoredPartition(Path path, FileChannel file, int[] checksums, Object version) {
+            this.path = path;
+            this.file = file;
+            this.checksums = checksums;
+            this.version = version;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    private static class CorruptPartitionException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CorruptPartitionException(Path partition, long block) {
+            super("Partition " + partition.getFileName() + " corrompue (bloc " + block + ")");
+        }
+    }
+
+    // Point d'entrée du SelectorServer des serveurs secondaires: poignée de main à la première lecture,
+    // puis traitement des requêtes disponibles avant de rendre la connexion au sélecteur
+    public boolean serveConnection(SelectorServer.Client client) throws IOException {
+        Protocol.Connection connection = (Protocol.Connection) client.getState();
+        boolean readable = true;
+        if (connection == null) {
+            connection = new Protocol.Connection(client.socket());
+            Protocol.serverHandshake(connection.in(), connection.out());
+            client.setState(connection);
+            readable = connection.in().available() > 0;
+        }
+        while (readable) {
+            Protocol.Message request = Protocol.Message.readFrom(connection.in());
+            if (request == null) {
+                return false;
+            }
+            handleRequest(request, connection);
+            readable = connection.in().available() > 0;
+        }
+        return true;
+    }
+
+    // Réserve la part du budget de transfert correspondant à "size" octets (plafonnée au budget total)
+    private int acquireInFlight(long size) throws IOException {
+        int permits = (int) Math.min(MAX_IN_FLIGHT_KB, Math.max(1, (size + 1023) / 1024));
+        try {
+            if (!inFlightKb.tryAcquire(permits, IN_FLIGHT_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("Serveur secondaire saturé, réessayer plus tard");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Attente du budget de transfert interrompue");
+        }
+        return permits;
+    }
+
+    private Object lockFor(Path partition) {
+        return locks[Math.floorMod(partition.getFileName().toString().hashCode(), LOCK_STRIPES)];
+    }
+
+    private static Path checksumFile(Path partition) {
+        return partition.resolveSibling(partition.getFileName() + CHECKSUM_SUFFIX);
+    }
+
+    private Path resolvePartition(String partitionName) throws IOException {
+        Path path = storageDir.resolve(partitionName).normalize();
+        if (!path.startsWith(storageDir.normalize()) || path.equals(storageDir.normalize())) {
+            throw new IOException("Nom de partition invalide: " + partitionName);
+        }
+        return path;
+    }
+
+    // Écrit la partition par blocs dans un fichier temporaire puis la rend visible d'un coup, avec ses sommes de
+    // contrôle par bloc calculées au fil de l'écriture. Renvoie le CRC32C de la partition entière, que le serveur
+    // principal compare au sien. "size" négatif: taille inconnue, seule la fin du flux découpé fait foi.
+    public long storePartition(String partitionName, long size, InputStream data) throws IOException {
+        Path target = resolvePartition(partitionName);
+        // Noms temporaires uniques: deux envois du même bloc dédupliqué peuvent arriver en même temps,
+        // le dernier renommage l'emporte sur un contenu identique
+        String prefix = target.getFileName().toString();
+        Path temp = Files.createTempFile(target.getParent(), prefix + ".", ".tmp");
+        Path checksumTemp = Files.createTempFile(target.getParent(), prefix + CHECKSUM_SUFFIX + ".", ".tmp");
+        CRC32C partitionCrc = new CRC32C();
+        CRC32C blockCrc = new CRC32C();
+        ByteArrayOutputStream checksums = new ByteArrayOutputStream();
+        DataOutputStream checksumOut = new DataOutputStream(checksums);
+        long written = 0;
+        try (OutputStream fileOut = Files.newOutputStream(temp)) {
+            byte[] buffer = new byte[ChunkedOutputStream.CHUNK_SIZE];
+            int n;
+            while ((n = data.read(buffer)) != -1) {
+                fileOut.write(buffer, 0, n);
+                partitionCrc.update(buffer, 0, n);
+                // Les sommes par bloc suivent les frontières de CHECKSUM_BLOCK_SIZE, pas celles des lectures réseau
+                int off = 0;
+                while (off < n) {
+                    int take = (int) Math.min(n - off, CHECKSUM_BLOCK_SIZE - (written + off) % CHECKSUM_BLOCK_SIZE);
+                    blockCrc.update(buffer, off, take);
+                    off += take;
+                    if ((written + off) % CHECKSUM_BLOCK_SIZE == 0) {
+                        checksumOut.writeInt((int) blockCrc.getValue());
+                        blockCrc.reset();
+                    }
+                }
+                written += n;
+            }
+            if (written % CHECKSUM_BLOCK_SIZE != 0) {
+                checksumOut.writeInt((int) blockCrc.getValue());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(checksumTemp);
+            throw e;
+        }
+        if (size >= 0 && written != size) {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(checksumTemp);
+            throw new IOException("Partition " + partitionName + " incomplète: " + written + "/" + size + " octets");
+        }
+        try {
+            Files.write(checksumTemp, checksums.toByteArray());
+            synchronized (lockFor(target)) {
+                Files.move(checksumTemp, checksumFile(target), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(checksumTemp);
+            throw e;
+        }
+        logger.accept("📦 Partition reçue et stockée: " + partitionName + " (" + written + " octets)");
+        return partitionCrc.getValue();
+    }
+
+    // Ajoute à "message" l'état du secondaire pour le placement: [long octets libres][long octets au total]
+    // [int transferts en cours]; -1 pour l'espace disque s'il ne peut pas être lu
+    public Protocol.Message putStats(Protocol.Message message) {
+        long usable = -1;
+        long total = -1;
+        try {
+            FileStore store = Files.getFileStore(storageDir);
+            usable = store.getUsableSpace();
+            total = store.getTotalSpace();
+        } catch (IOException e) {
+            // répertoire pas encore créé ou volume indisponible
+        }
+        return message.putLong(usable).putLong(total).putInt(activeTransfers.get());
+    }
+
+    // Traite une requête du serveur principal sur une session persistante: chaque requête reçoit une réponse
+    // et la session reste alignée sur la suivante, y compris quand le stockage échoue
+    public void handleRequest(Protocol.Message request, Protocol.Connection connection) throws IOException {
+        DataInputStream in = connection.in();
+        DataOutputStream out = connection.out();
+        boolean transfer = request.opcode() != Protocol.PING && request.opcode() != Protocol.DELETE_PARTITION;
+        if (transfer) {
+            activeTransfers.incrementAndGet();
+        }
+        try {
+            handle(request, connection, in, out);
+        } finally {
+            if (transfer) {
+                activeTransfers.decrementAndGet();
+            }
+        }
+        out.flush();
+    }
+
+    private void handle(Protocol.Message request, Protocol.Connection connection, DataInputStream in,
+                        DataOutputStream out) throws IOException {
+        switch (request.opcode()) {
+            case Protocol.STORE_PARTITION: {
+                String partitionName = request.getString();
+                long partitionSize = request.getLong();
+                ChunkedInputStream data = new ChunkedInputStream(in);
+                int permits = 0;
+                try {
+                    // Taille inconnue: la partition est réservée comme un envoi direct maximal
+                    permits = acquireInFlight(partitionSize >= 0 ? partitionSize : ChunkedOutputStream.ZERO_COPY_CHUNK_SIZE);
+                    long checksum = storePartition(partitionName, partitionSize, data);
+                    Protocol.Message.ok().putLong(checksum).writeTo(out);
+                } catch (IOException e) {
+                    data.drain();
+                    logger.accept("❌ Erreur de stockage de " + partitionName + ": " + e.getMessage());
+                    Protocol.Message.error(e.getMessage()).writeTo(out);
+                } finally {
+                    inFlightKb.release(permits);
+                }
+                break;
+            }
+            case Protocol.FETCH_PARTITION:
+                fetchPartition(request.getString(), 0, -1, connection);
+                break;
+            case Protocol.FETCH_PARTITION_RANGE:
+                fetchPartition(request.getString(), request.getLong(), request.getLong(), connection);
+                break;
+            case Protocol.DELETE_PARTITION:
+                Protocol.Message.ok().putBoolean(deletePartition(request.getString())).writeTo(out);
+                break;
+            case Protocol.COPY_PARTITION: {
+                String partitionName = request.getString();
+                try {
+                    long checksum = copyPartition(partitionName, request.getString(), request.getInt(), request.getLong());
+                    Protocol.Message.ok().putLong(checksum).writeTo(out);
+                } catch (IOException e) {
+                    logger.accept("❌ Erreur de copie de " + partitionName + ": " + e.getMessage());
+                    Protocol.Message.error(e.getMessage()).writeTo(out);
+                }
+                break;
+            }
+            case Protocol.PING:
+                putStats(Protocol.Message.ok()).writeTo(out);
+                break;
+            default:
+                throw new IOException("Opération inconnue: " + request.opcode());
+        }
+    }
+
+    // Rééquilibrage: la partition est lue sur le secondaire source et stockée ici sans passer par le serveur
+    // principal, à "bytesPerSecond" au plus. Renvoie le CRC32C des octets écrits, comme storePartition().
+    public long copyPartition(String partitionName, String sourceIp, int sourcePort, long bytesPerSecond)
+            throws IOException {
+        try (Protocol.Connection source = Protocol.connect(sourceIp, sourcePort, COPY_CONNECT_TIMEOUT_MS)) {
+            source.send(new Protocol.Message(Protocol.FETCH_PARTITION).putString(partitionName));
+            long size = source.expectOk().getLong();
+            int permits = acquireInFlight(size);
+            try {
+                Throttle throttle = new Throttle(bytesPerSecond);
+                InputStream data = new FilterInputStream(new ChunkedInputStream(source.in())) {
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n > 0) {
+                            throttle.acquire(n);
+                        }
+                        return n;
+                    }
+                };
+                long checksum = storePartition(partitionName, size, data);
+                logger.accept("📥 Partition " + partitionName + " copiée depuis " + sourceIp + ":" + sourcePort);
+                return checksum;
+            } finally {
+                inFlightKb.release(permits);
+            }
+        }
+    }
+
+    // Le serveur principal transmet le chemin inscrit dans son catalogue: seul le nom du fichier est retenu
+    public boolean deletePartition(String partitionPath) throws IOException {
+        Path fileName = Paths.get(partitionPath).getFileName();
+        if (fileName == null) {
+            throw new IOException("Chemin de partition invalide: " + partitionPath);
+        }
+        Path partition = resolvePartition(fileName.toString());
+        boolean deleted;
+        synchronized (lockFor(partition)) {
+            deleted = Files.deleteIfExists(partition);
+            Files.deleteIfExists(checksumFile(partition));
+            Files.deleteIfExists(partition.resolveSibling(partition.getFileName() + QUARANTINE_SUFFIX));
+        }
+        if (deleted) {
+            logger.accept("🗑️ Partition supprimée: " + partitionPath);
+        }
+        return deleted;
+    }
+
+    // Répond OK avec le nombre d'octets envoyés puis le contenu par blocs, ou ERROR si la partition est absente.
+    // "length" négatif: jusqu'à la fin de la partition. Chaque bloc couvert par la plage est vérifié avant
+    // d'être envoyé; un bloc corrompu interrompt le flux (le serveur principal reprend sur une autre réplique)
+    // et la partition est mise en quarantaine.
+    public void fetchPartition(String partitionName, long offset, long length, Protocol.Connection connection) throws IOException {
+        DataOutputStream out = connection.out();
+        Path partition = resolvePartition(partitionName);
+        StoredPartition stored;
+        try {
+            stored = Files.isRegularFile(partition) ? openPartition(partition) : null;
+        } catch (NoSuchFileException e) {
+            stored = null;
+        }
+        if (stored == null) {
+            Protocol.Message.error("Partition introuvable: " + partitionName).writeTo(out);
+            out.flush();
+            logger.accept("❌ Partition demandée introuvable: " + partitionName);
+            return;
+        }
+
+        try (StoredPartition file = stored) {
+            long size = file.file.size();
+            if (offset < 0 || offset > size) {
+                Protocol.Message.error("Plage invalide pour " + partitionName + ": " + offset + "/" + size).writeTo(out);
+                out.flush();
+                return;
+            }
+            long count = length < 0 ? size - offset : Math.min(length, size - offset);
+
+            int permits;
+            try {
+                permits = acquireInFlight(count);
+            } catch (IOException e) {
+                Protocol.Message.error(e.getMessage()).writeTo(out);
+                out.flush();
+                return;
+            }
+            try {
+                Protocol.Message.ok().putLong(count).writeTo(out);
+                // Socket ouverte par le SelectorServer: son canal reçoit directement les pages du fichier
+                WritableByteChannel channel = connection.socket().getChannel() != null
+                        ? connection.socket().getChannel() : Channels.newChannel(out);
+                ChunkedOutputStream chunkOut = new ChunkedOutputStream(out, 1);
+                try {
+                    if (file.checksums == null) {
+                        chunkOut.transferFrom(file.file, offset, count, channel);
+                    } else {
+                        readVerified(file, offset, count, readBuffers.get(), data -> chunkOut.write(data, channel));
+                    }
+                } catch (CorruptPartitionException e) {
+                    chunkOut.abort();
+                    quarantine(file, e);
+                    return;
+                } catch (IOException e) {
+                    chunkOut.abort();
+                    throw e;
+                }
+                chunkOut.finish();
+            } finally {
+                inFlightKb.release(permits);
+            }
+        }
+        logger.accept("📤 Partition envoyée: " + partitionName);
+    }
+
+    // Ouvre la partition et lit ses sommes de contrôle sous le verrou de son nom: l'une et les autres
+    // correspondent toujours au même envoi, même si la partition est remplacée pendant la lecture
+    private StoredPartition openPartition(Path partition) throws IOException {
+        synchronized (lockFor(partition)) {
+            FileChannel file = FileChannel.open(partition, StandardOpenOption.READ);
+            try {
+                Object key = Files.readAttributes(partition, BasicFileAttributes.class).fileKey();
+                Object version = key != null ? key : Files.getLastModifiedTime(partition);
+                Path checksumFile = checksumFile(partition);
+                int[] checksums = null;
+                if (Files.exists(checksumFile)) {
+                    ByteBuffer raw = ByteBuffer.wrap(Files.readAllBytes(checksumFile));
+                    checksums = new int[raw.remaining() / 4];
+                    raw.asIntBuffer().get(checksums);
+                }
+                return new StoredPartition(partition, file, checksums, version);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+    }
+
+    private interface VerifiedSink {
+        void accept(ByteBuffer data) throws IOException;
+    }
+
+    // Lit les blocs qui couvrent [offset, offset + length), compare chacun à sa somme de contrôle et ne passe
+    // à "sink" que des octets vérifiés de la plage, paquet par paquet
+    private void readVerified(StoredPartition partition, long offset, long length, ByteBuffer buffer, VerifiedSink sink)
+            throws IOException {
+        long size = partition.file.size();
+        long blocks = (size + CHECKSUM_BLOCK_SIZE - 1) / CHECKSUM_BLOCK_SIZE;
+        if (blocks != partition.checksums.length) {
+            // Partition tronquée ou allongée depuis son écriture
+            throw new CorruptPartitionException(partition.path, Math.min(blocks, partition.checksums.length));
+        }
+        CRC32C crc = new CRC32C();
+        long end = offset + length;
+        long position = offset - offset % CHECKSUM_BLOCK_SIZE;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - position));
+            while (buffer.hasRemaining()) {
+                if (partition.file.read(buffer, position + buffer.position()) < 0) {
+                    throw new CorruptPartitionException(partition.path, (position + buffer.position()) / CHECKSUM_BLOCK_SIZE);
+                }
+            }
+            int read = buffer.position();
+            for (int from = 0; from < read; from += CHECKSUM_BLOCK_SIZE) {
+                crc.reset();
+                crc.update(buffer.limit(Math.min(read, from + CHECKSUM_BLOCK_SIZE)).position(from));
+                long block = (position + from) / CHECKSUM_BLOCK_SIZE;
+                if ((int) crc.getValue() != partition.checksums[(int) block]) {
+                    throw new CorruptPartitionException(partition.path, block);
+                }
+            }
+            buffer.limit((int) (Math.min(end, position + read) - position));
+            buffer.position((int) (Math.max(offset, position) - position));
+            sink.accept(buffer);
+            position += read;
+        }
+    }
+
+    // La partition n'est plus servie: le serveur principal lit ses autres répliques (ou reconstitue le fragment)
+    private void quarantine(StoredPartition partition, CorruptPartitionException cause) {
+        synchronized (lockFor(partition.path)) {
+            try {
+                Object key = Files.readAttributes(partition.path, BasicFileAttributes.class).fileKey();
+                Object version = key != null ? key : Files.getLastModifiedTime(partition.path);
+                if (!version.equals(partition.version)) {
+                    // remplacée par un nouvel envoi depuis la lecture
+                    return;
+                }
+                Files.move(partition.path, partition.path.resolveSibling(partition.path.getFileName() + QUARANTINE_SUFFIX),
+                        StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(checksumFile(partition.path));
+                logger.accept("❌ " + cause.getMessage() + ": partition mise en quarantaine");
+            } catch (NoSuchFileException e) {
+                // supprimée entre-temps
+            } catch (IOException e) {
+                logger.accept("❌ Mise en quarantaine impossible pour " + partition.path.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Relit périodiquement toutes les partitions pour détecter la dégradation du disque avant qu'une lecture
+    // n'en ait besoin; à appeler une fois au démarrage du serveur secondaire
+    public void startScrubber() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "partition-scrubber");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scrub, SCRUB_INTERVAL_SECONDS, SCRUB_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Un passage complet au plus à SCRUB_BYTES_PER_SECOND; les partitions corrompues sont mises en quarantaine
+    public void scrub() {
+        List<Path> partitions = new ArrayList<>();
+        try (Stream<Path> files = Files.list(storageDir)) {
+            // Les fichiers temporaires, de sommes ou en quarantaine n'ont pas de fichier de sommes à eux
+            files.filter(path -> Files.exists(checksumFile(path))).forEach(partitions::add);
+        } catch (IOException e) {
+            logger.accept("❌ Vérification de fond impossible: " + e.getMessage());
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(VERIFIED_READ_SIZE);
+        Throttle throttle = new Throttle(SCRUB_BYTES_PER_SECOND);
+        int verified = 0;
+        int corrupt = 0;
+        for (Path path : partitions) {
+            try (StoredPartition partition = openPartition(path)) {
+                if (partition.checksums == null) {
+                    continue;
+                }
+                try {
+                    readVerified(partition, 0, partition.file.size(), buffer, data -> throttle.acquire(data.remaining()));
+                    verified++;
+                } catch (CorruptPartitionException e) {
+                    quarantine(partition, e);
+                    corrupt++;
+                }
+            } catch (NoSuchFileException e) {
+                // supprimée pendant le passage
+            } catch (InterruptedIOException e) {
+                return;
+            } catch (IOException e) {
+                logger.accept("❌ Lecture impossible de " + path.getFileName() + " pendant la vérification: " + e.getMessage());
+            }
+        }
+        if (verified + corrupt > 0) {
+            logger.accept("🔍 Vérification de fond terminée: " + (verified + corrupt) + " partition(s), "
+                    + String.format("%.1f Mo relus", throttle.bytes / (1024.0 * 1024.0)) + ", " + corrupt + " corrompue(s)");
+        }
+    }
+
+    // Débit moyen plafonné depuis la création
+    private static class Throttle {
+        private final long start = System.nanoTime();
+        private final long bytesPerSecond;
+        private long bytes;
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(int count) throws InterruptedIOException {
+            bytes += count;
+            long dueMs = bytes * 1000 / bytesPerSecond;
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            if (dueMs > elapsedMs) {
+                try {
+                    Thread.sleep(dueMs - elapsedMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Transfert limité interrompu");
+                }
+            }
+        }
+    }
+}
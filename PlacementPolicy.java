@@ -0,0 +1,145 @@
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Secondaires admis à recevoir un fichier et réplique lue en premier, d'après la capacité et la charge
+// remontées par chaque serveur (SecondaryServerInfo); l'emplacement lui-même vient de l'anneau (HashRing),
+// où chaque serveur occupe un nombre de positions proportionnel à sa capacité (capacityWeights).
+// Le poids d'un serveur est son débit effectif (débit mesuré divisé par les transferts en cours) multiplié par
+// sa part d'espace libre: un serveur rapide et peu rempli sert plus de lectures, un serveur presque plein moins,
+// et ne reçoit plus de blocs sous MIN_FREE_RATIO.
+// Un serveur qui n'a encore rien remonté reçoit les valeurs moyennes des autres.
+public final class PlacementPolicy {
+    // Part du disque de chaque secondaire laissée libre
+    private static final double MIN_FREE_RATIO = Double.parseDouble(System.getProperty("mainserver.minFreeRatio", "0.05"));
+    // Poids bornés autour de la moyenne: aucune partition ne devient minuscule ou démesurée
+    private static final double MIN_WEIGHT = 0.25;
+    private static final double MAX_WEIGHT = 4;
+    // Débit effectif sous lequel un serveur est évité pour les écritures, relativement à la moyenne
+    private static final double OVERLOAD_RATIO = Double.parseDouble(System.getProperty("mainserver.overloadRatio", "0.25"));
+
+    private PlacementPolicy() {
+    }
+
+    // Serveurs qui gardent assez d'espace libre après avoir reçu "share" octets chacun
+    public static List<SecondaryServerInfo> select(List<SecondaryServerInfo> servers, long share) {
+        List<SecondaryServerInfo> eligible = new ArrayList<>();
+        for (SecondaryServerInfo server : servers) {
+            long total = server.getTotalBytes();
+            if (total <= 0 || server.getUsableBytes() - share >= total * MIN_FREE_RATIO) {
+                eligible.add(server);
+            }
+        }
+        return eligible;
+    }
+
+    // Écritures: les serveurs dont le débit effectif (débit mesuré divisé par les transferts en cours) tombe sous
+    // OVERLOAD_RATIO fois la moyenne sont évités, tant qu'il reste "needed" autres serveurs. L'anneau désigne
+    // alors les suivants de la liste de préférence; le rééquilibrage ramène les partitions une fois la charge passée.
+    public static List<SecondaryServerInfo> avoidOverloaded(List<SecondaryServerInfo> servers, int needed) {
+        double[] throughputs = throughputs(servers);
+        double mean = Arrays.stream(throughputs).average().orElse(0);
+        List<SecondaryServerInfo> idle = new ArrayList<>();
+        for (int i = 0; i < servers.size(); i++) {
+            if (throughputs[i] >= mean * OVERLOAD_RATIO) {
+                idle.add(servers.get(i));
+            }
+        }
+        return idle.size() >= needed ? idle : servers;
+    }
+
+    // Poids de capacité (disque total) de chaque serveur sur l'anneau, de moyenne 1, bornés comme weights().
+    // Seule la capacité y entre: elle ne varie pas d'un battement à l'autre, l'emplacement des clés reste stable.
+    public static double[] capacityWeights(List<SecondaryServerInfo> servers) {
+        long totalSum = 0;
+        int reported = 0;
+        for (SecondaryServerInfo server : servers) {
+            if (server.getTotalBytes() > 0) {
+                totalSum += server.getTotalBytes();
+                reported++;
+            }
+        }
+        double[] weights = new double[servers.size()];
+        for (int i = 0; i < weights.length; i++) {
+            long total = servers.get(i).getTotalBytes();
+            weights[i] = total > 0 ? Math.max(MIN_WEIGHT, Math.min(MAX_WEIGHT, total * reported / (double) totalSum)) : 1;
+        }
+        return weights;
+    }
+
+    // Débit effectif de chaque serveur; un serveur sans mesure reçoit le débit moyen des autres
+    private static double[] throughputs(List<SecondaryServerInfo> servers) {
+        double bandwidthSum = 0;
+        int measured = 0;
+        for (SecondaryServerInfo server : servers) {
+            if (server.getBandwidth() > 0) {
+                bandwidthSum += server.getBandwidth();
+                measured++;
+            }
+        }
+        double defaultBandwidth = measured > 0 ? bandwidthSum / measured : 1;
+        double[] throughputs = new double[servers.size()];
+        for (int i = 0; i < throughputs.length; i++) {
+            SecondaryServerInfo server = servers.get(i);
+            double bandwidth = server.getBandwidth() > 0 ? server.getBandwidth() : defaultBandwidth;
+            throughputs[i] = bandwidth / (1 + server.getLoad());
+        }
+        return throughputs;
+    }
+
+    // Poids relatifs des serveurs, de moyenne 1 avant d'être bornés entre MIN_WEIGHT et MAX_WEIGHT
+    public static double[] weights(List<SecondaryServerInfo> servers) {
+        int n = servers.size();
+        double freeSum = 0;
+        int reported = 0;
+        for (SecondaryServerInfo server : servers) {
+            if (server.getTotalBytes() > 0) {
+                freeSum += freeRatio(server);
+                reported++;
+            }
+        }
+        double defaultFree = reported > 0 ? freeSum / reported : 1;
+
+        double[] throughputs = throughputs(servers);
+        double[] weights = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            SecondaryServerInfo server = servers.get(i);
+            double free = server.getTotalBytes() > 0 ? freeRatio(server) : defaultFree;
+            weights[i] = throughputs[i] * free;
+            sum += weights[i];
+        }
+        for (int i = 0; i < n; i++) {
+            weights[i] = sum > 0 ? Math.max(MIN_WEIGHT, Math.min(MAX_WEIGHT, weights[i] * n / sum)) : 1;
+        }
+        return weights;
+    }
+
+    // Indice tiré au hasard en proportion du poids de chaque serveur; null (serveur inconnu) reçoit le poids minimal
+    public static int pick(List<SecondaryServerInfo> servers) {
+        List<SecondaryServerInfo> known = new ArrayList<>();
+        for (SecondaryServerInfo server : servers) {
+            if (server != null) {
+                known.add(server);
+            }
+        }
+        double[] knownWeights = weights(known);
+        double[] weights = new double[servers.size()];
+        double sum = 0;
+        for (int i = 0, k = 0; i < weights.length; i++) {
+            weights[i] = servers.get(i) != null ? knownWeights[k++] : MIN_WEIGHT;
+            sum += weights[i];
+        }
+        double target = ThreadLocalRandom.current().nextDouble(sum);
+        for (int i = 0; i < weights.length; i++) {
+            target -= weights[i];
+            if (target < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static double freeRatio(SecondaryServerInfo server) {
+        return Math.max(0, server.getUsableBytes()) / (double) server.getTotalBytes();
+    }
+}
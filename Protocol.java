@@ -0,0 +1,297 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+// Protocole binaire entre clients, serveur principal et serveurs secondaires.
+// Poignée de main: [int MAGIC][byte version] dans chaque sens.
+// Message: [int longueur][byte opcode][données], la longueur comptant l'opcode.
+// Les contenus de fichiers suivent le message qui les annonce sous forme de flux découpé (ChunkedOutputStream).
+public final class Protocol {
+    public static final int MAGIC = 0x50534653; // "PSFS", distinct de l'en-tête 0xACED de la sérialisation Java
+    public static final byte VERSION = 1;
+    public static final byte MIN_VERSION = 1;
+    static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    // Client -> serveur principal
+    public static final byte UPLOAD = 0x01;
+    public static final byte DOWNLOAD = 0x02;
+    public static final byte DELETE = 0x03;
+    public static final byte LIST_FILES = 0x04;
+    // [nom][long début][long longueur, négative: jusqu'à la fin] -> OK [long octets] + contenu découpé
+    public static final byte DOWNLOAD_RANGE = 0x05;
+    // Téléchargement reprenable (UploadSessions):
+    // UPLOAD_OPEN [nom][long taille][disposition, "" par défaut][uploadId, "" pour une nouvelle session]
+    //   -> OK [uploadId][long octets déjà reçus]
+    // UPLOAD_CHUNKS [uploadId][long position] suivi de blocs [int taille][int CRC32C][octets] terminés par
+    //   une taille nulle -> OK [long octets reçus] ou ERROR (bloc corrompu ou hors séquence: reprendre par UPLOAD_OPEN)
+    // UPLOAD_COMMIT [uploadId][long CRC32C du fichier] -> OK une fois le fichier stocké
+    public static final byte UPLOAD_OPEN = 0x06;
+    public static final byte UPLOAD_CHUNKS = 0x07;
+    public static final byte UPLOAD_COMMIT = 0x08;
+    // Opérations groupées (BatchTransfer), traitées en parallèle par le serveur et enchaînables sans attendre
+    // les réponses:
+    // UPLOAD_BATCH [int n][disposition, "" par défaut] puis n fois [nom][long taille], suivi des n contenus découpés
+    //   dans le même ordre -> OK [int n] puis n fois [erreur, "" si le fichier est stocké]
+    // DOWNLOAD_BATCH [int n] puis n noms -> pour chaque fichier, dans l'ordre: OK [long taille][long CRC32C]
+    //   suivi du contenu découpé, ou ERROR [message]
+    // DELETE_BATCH [int n] puis n noms -> OK [int n] puis n fois [erreur, "" si le fichier est supprimé]
+    public static final byte UPLOAD_BATCH = 0x09;
+    public static final byte DOWNLOAD_BATCH = 0x0A;
+    public static final byte DELETE_BATCH = 0x0B;
+
+    // Serveur principal <-> serveurs secondaires
+    // Taille annoncée négative: inconnue à l'avance (partition compressée au fil de l'envoi).
+    // Réponse OK [long CRC32C des octets écrits], comparé par le serveur principal à celui des octets envoyés.
+    public static final byte STORE_PARTITION = 0x10;
+    public static final byte FETCH_PARTITION = 0x11;
+    public static final byte DELETE_PARTITION = 0x12;
+    // PING: réponse OK [long octets libres][long octets au total][int transferts en cours] (PartitionStore.putStats);
+    // REGISTER: [ip][port][chemin] suivis des mêmes champs. Absents chez un secondaire plus ancien.
+    public static final byte PING = 0x13;
+    public static final byte REGISTER = 0x14;
+    public static final byte FETCH_PARTITION_RANGE = 0x15;
+    // Rééquilibrage: [nom][ip source][port source][long octets par seconde]; le secondaire lit la partition sur
+    // le secondaire source et la stocke. Réponse OK [long CRC32C des octets écrits], comme STORE_PARTITION.
+    public static final byte COPY_PARTITION = 0x16;
+
+    // Réponses
+    public static final byte OK = 0x40;
+    public static final byte ERROR = 0x41;
+
+    private Protocol() {
+    }
+
+    // Côté appelant: envoie la version supportée et vérifie celle retenue par le serveur
+    public static byte clientHandshake(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.flush();
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Le serveur ne parle pas le protocole binaire");
+        }
+        byte version = in.readByte();
+        if (version < MIN_VERSION) {
+            throw new IOException("Version de protocole refusée par le serveur");
+        }
+        return version;
+    }
+
+    // Côté serveur: retient la plus haute version commune, 0 si aucune
+    public static byte serverHandshake(DataInputStream in, DataOutputStream out) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("En-tête de protocole inconnu");
+        }
+        byte clientVersion = in.readByte();
+        byte version = clientVersion < MIN_VERSION ? 0 : (byte) Math.min(clientVersion, VERSION);
+        out.writeInt(MAGIC);
+        out.writeByte(version);
+        out.flush();
+        if (version == 0) {
+            throw new IOException("Version de protocole non supportée: " + clientVersion);
+        }
+        return version;
+    }
+
+    // Ouvre une connexion et effectue la poignée de main
+    public static Connection connect(String ip, int port, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(ip, port), timeoutMs);
+            socket.setTcpNoDelay(true);
+            Connection connection = new Connection(socket);
+            clientHandshake(connection.in, connection.out);
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public static class Connection implements Closeable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        // Tampons réduits: le serveur principal garde des milliers de connexions ouvertes,
+        // et les blocs de données plus grands que le tampon le contournent de toute façon
+        public static final int BUFFER_SIZE = 2048;
+
+        public Connection(Socket socket) throws IOException {
+            this(socket, new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        }
+
+        // Pour une socket dont les premiers octets ont déjà été inspectés à travers "input"
+        public Connection(Socket socket, InputStream input) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(input);
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        }
+
+        public DataInputStream in() {
+            return in;
+        }
+
+        public DataOutputStream out() {
+            return out;
+        }
+
+        public Socket socket() {
+            return socket;
+        }
+
+        public void send(Message message) throws IOException {
+            message.writeTo(out);
+            out.flush();
+        }
+
+        // Attend une réponse OK; une réponse ERROR devient une RemoteError portant son message
+        public Message expectOk() throws IOException {
+            Message reply = Message.readFrom(in);
+            if (reply == null) {
+                throw new EOFException("Connexion fermée par le serveur");
+            }
+            if (reply.opcode() == ERROR) {
+                throw new RemoteError(reply.getString());
+            }
+            if (reply.opcode() != OK) {
+                throw new IOException("Réponse inattendue: " + reply.opcode());
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    // Erreur renvoyée par le pair dans une réponse ERROR: la connexion reste utilisable
+    public static class RemoteError extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RemoteError(String message) {
+            super(message);
+        }
+    }
+
+    public static class Message {
+        private final byte opcode;
+        private final ByteArrayOutputStream buffer;
+        private final DataOutputStream writer;
+        private final DataInputStream reader;
+
+        public Message(byte opcode) {
+            this.opcode = opcode;
+            this.buffer = new ByteArrayOutputStream();
+            this.writer = new DataOutputStream(buffer);
+            this.reader = null;
+        }
+
+        private Message(byte opcode, byte[] payload) {
+            this.opcode = opcode;
+            this.buffer = null;
+            this.writer = null;
+            this.reader = new DataInputStream(new ByteArrayInputStream(payload));
+        }
+
+        public static Message ok() {
+            return new Message(OK);
+        }
+
+        public static Message error(String message) {
+            return new Message(ERROR).putString(message == null ? "erreur inconnue" : message);
+        }
+
+        public byte opcode() {
+            return opcode;
+        }
+
+        public Message putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            try {
+                writer.writeInt(bytes.length);
+                writer.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        public Message putLong(long value) {
+            try {
+                writer.writeLong(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        public Message putInt(int value) {
+            try {
+                writer.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        public Message putBoolean(boolean value) {
+            try {
+                writer.writeBoolean(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        public String getString() throws IOException {
+            int length = reader.readInt();
+            if (length < 0 || length > reader.available()) {
+                throw new IOException("Chaîne invalide dans le message");
+            }
+            byte[] bytes = new byte[length];
+            reader.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public long getLong() throws IOException {
+            return reader.readLong();
+        }
+
+        public int getInt() throws IOException {
+            return reader.readInt();
+        }
+
+        public boolean getBoolean() throws IOException {
+            return reader.readBoolean();
+        }
+
+        // Permet d'ajouter des champs optionnels en fin de message sans changer de version
+        public boolean hasRemaining() throws IOException {
+            return reader.available() > 0;
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(buffer.size() + 1);
+            out.writeByte(opcode);
+            buffer.writeTo(out);
+        }
+
+        // Renvoie null si la connexion a été fermée proprement entre deux messages
+        public static Message readFrom(DataInputStream in) throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (length < 1 || length > MAX_MESSAGE_SIZE) {
+                throw new IOException("Taille de message invalide: " + length);
+            }
+            byte opcode = in.readByte();
+            byte[] payload = new byte[length - 1];
+            in.readFully(payload);
+            return new Message(opcode, payload);
+        }
+    }
+}
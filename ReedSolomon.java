@@ -0,0 +1,185 @@
+// Code de Reed-Solomon systématique sur GF(2^8): k fragments de données, m fragments de parité.
+// N'importe quels k fragments parmi les k+m suffisent à reconstituer les données.
+// La matrice de codage est une matrice de Vandermonde ramenée à la forme systématique (identité en haut).
+public class ReedSolomon {
+    private static final int FIELD_SIZE = 256;
+    private static final int POLYNOMIAL = 0x11D;
+    private static final int[] LOG = new int[FIELD_SIZE];
+    private static final int[] EXP = new int[FIELD_SIZE * 2];
+    // Table complète des produits: une recherche par octet dans la boucle de codage
+    private static final byte[][] MUL = new byte[FIELD_SIZE][FIELD_SIZE];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < FIELD_SIZE - 1; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & FIELD_SIZE) != 0) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        for (int i = FIELD_SIZE - 1; i < EXP.length; i++) {
+            EXP[i] = EXP[i - (FIELD_SIZE - 1)];
+        }
+        for (int a = 1; a < FIELD_SIZE; a++) {
+            for (int b = 1; b < FIELD_SIZE; b++) {
+                MUL[a][b] = (byte) EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    private final byte[][] matrix;
+
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards < 1 || parityShards < 0 || dataShards + parityShards > FIELD_SIZE) {
+            throw new IllegalArgumentException("Paramètres de Reed-Solomon invalides: " + dataShards + "+" + parityShards);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        int totalShards = dataShards + parityShards;
+        byte[][] vandermonde = new byte[totalShards][dataShards];
+        for (int r = 0; r < totalShards; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                vandermonde[r][c] = (byte) power(r, c);
+            }
+        }
+        byte[][] top = new byte[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        this.matrix = multiply(vandermonde, invert(top));
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    // Calcule les fragments de parité shards[k..k+m) à partir des fragments de données shards[0..k)
+    public void encodeParity(byte[][] shards, int length) {
+        for (int p = 0; p < parityShards; p++) {
+            combine(matrix[dataShards + p], shards, 0, shards[dataShards + p], length);
+        }
+    }
+
+    // Reconstitue les fragments de données absents à partir d'au moins k fragments présents.
+    // Les fragments de données absents doivent être alloués par l'appelant (taille >= length).
+    public void reconstructData(byte[][] shards, boolean[] present, int length) {
+        int[] rows = new int[dataShards];
+        int found = 0;
+        for (int i = 0; i < shards.length && found < dataShards; i++) {
+            if (present[i]) {
+                rows[found++] = i;
+            }
+        }
+        if (found < dataShards) {
+            throw new IllegalArgumentException("Fragments insuffisants: " + found + "/" + dataShards);
+        }
+
+        byte[][] subMatrix = new byte[dataShards][];
+        byte[][] inputs = new byte[dataShards][];
+        for (int i = 0; i < dataShards; i++) {
+            subMatrix[i] = matrix[rows[i]];
+            inputs[i] = shards[rows[i]];
+        }
+        byte[][] decode = invert(subMatrix);
+        for (int d = 0; d < dataShards; d++) {
+            if (!present[d]) {
+                combine(decode[d], inputs, 0, shards[d], length);
+            }
+        }
+    }
+
+    // out = somme des coefficients[i] * inputs[first + i]; boucle interne sur les octets pour rester dans le cache
+    private static void combine(byte[] coefficients, byte[][] inputs, int first, byte[] out, int length) {
+        byte[] table = MUL[coefficients[0] & 0xFF];
+        byte[] in = inputs[first];
+        for (int i = 0; i < length; i++) {
+            out[i] = table[in[i] & 0xFF];
+        }
+        for (int c = 1; c < coefficients.length; c++) {
+            table = MUL[coefficients[c] & 0xFF];
+            in = inputs[first + c];
+            for (int i = 0; i < length; i++) {
+                out[i] ^= table[in[i] & 0xFF];
+            }
+        }
+    }
+
+    private static int power(int base, int exponent) {
+        if (exponent == 0) {
+            return 1;
+        }
+        if (base == 0) {
+            return 0;
+        }
+        return EXP[(LOG[base] * exponent) % (FIELD_SIZE - 1)];
+    }
+
+    private static int divide(int a, int b) {
+        if (a == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] - LOG[b] + FIELD_SIZE - 1];
+    }
+
+    private static byte[][] multiply(byte[][] left, byte[][] right) {
+        byte[][] result = new byte[left.length][right[0].length];
+        for (int r = 0; r < left.length; r++) {
+            for (int c = 0; c < right[0].length; c++) {
+                int value = 0;
+                for (int i = 0; i < right.length; i++) {
+                    value ^= MUL[left[r][i] & 0xFF][right[i][c] & 0xFF];
+                }
+                result[r][c] = (byte) value;
+            }
+        }
+        return result;
+    }
+
+    // Inversion de Gauss-Jordan; toute sous-matrice carrée de la matrice de codage est inversible
+    private static byte[][] invert(byte[][] source) {
+        int size = source.length;
+        byte[][] work = new byte[size][size * 2];
+        for (int r = 0; r < size; r++) {
+            System.arraycopy(source[r], 0, work[r], 0, size);
+            work[r][size + r] = 1;
+        }
+        for (int col = 0; col < size; col++) {
+            int pivot = col;
+            while (pivot < size && work[pivot][col] == 0) {
+                pivot++;
+            }
+            if (pivot == size) {
+                throw new IllegalArgumentException("Matrice non inversible");
+            }
+            byte[] swap = work[col];
+            work[col] = work[pivot];
+            work[pivot] = swap;
+
+            int scale = work[col][col] & 0xFF;
+            if (scale != 1) {
+                for (int c = 0; c < size * 2; c++) {
+                    work[col][c] = (byte) divide(work[col][c] & 0xFF, scale);
+                }
+            }
+            for (int r = 0; r < size; r++) {
+                int factor = work[r][col] & 0xFF;
+                if (r != col && factor != 0) {
+                    for (int c = 0; c < size * 2; c++) {
+                        work[r][c] ^= MUL[factor][work[col][c] & 0xFF];
+                    }
+                }
+            }
+        }
+        byte[][] inverse = new byte[size][size];
+        for (int r = 0; r < size; r++) {
+            System.arraycopy(work[r], size, inverse[r], 0, size);
+        }
+        return inverse;
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Transferts reprenables côté client. Une coupure réseau relance la connexion et le transfert reprend
+// là où il s'était arrêté: à la position confirmée par le serveur pour un envoi (UPLOAD_OPEN), à la taille
+// du fichier partiel pour une réception (DOWNLOAD_RANGE). Le fichier complet est vérifié par CRC32C des deux côtés.
+// Un nouvel envoi passe d'abord par le flux direct (UPLOAD), relayé aux secondaires sans copie sur le disque
+// du serveur; la session, qui met le fichier en attente dans uploads/, ne sert qu'à reprendre après une coupure.
+public final class ResumableTransfer {
+    // Blocs vérifiés un à un par le serveur: un bloc perdu coûte au plus 1 Mo à renvoyer
+    static final int UPLOAD_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MS = 1000;
+    // Identifiants des sessions d'envoi en cours, pour reprendre aussi après un redémarrage du client
+    private static final Path STATE_DIR = Paths.get(System.getProperty("user.home"), ".progsys", "uploads");
+
+    public interface Connector {
+        Protocol.Connection connect() throws IOException;
+    }
+
+    private ResumableTransfer() {
+    }
+
+    // "layout" null: disposition par défaut du serveur
+    public static void upload(Connector connector, Path file, String fileName, String layout, Consumer<String> log)
+            throws IOException {
+        long size = Files.size(file);
+        Path stateFile = STATE_DIR.resolve(Integer.toHexString(file.toAbsolutePath().toString().hashCode()) + ".properties");
+        Properties state = loadState(stateFile, file, size);
+
+        IOException lastError = null;
+        int attempt = 1;
+        // Session interrompue avant un redémarrage du client: elle est reprise plutôt que de tout renvoyer
+        if (!state.containsKey("uploadId")) {
+            try (Protocol.Connection connection = connector.connect()) {
+                stream(connection, file, fileName, size, layout);
+                return;
+            } catch (Protocol.RemoteError e) {
+                throw e;
+            } catch (IOException e) {
+                lastError = e;
+                attempt++;
+            }
+        }
+        long checksum = checksum(file, size);
+        for (; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                log.accept("Connexion perdue (" + lastError.getMessage() + "), reprise de l'envoi...");
+                pause(attempt);
+            }
+            try (Protocol.Connection connection = connector.connect()) {
+                Protocol.Message reply = request(connection, new Protocol.Message(Protocol.UPLOAD_OPEN)
+                        .putString(fileName).putLong(size).putString(layout != null ? layout : "")
+                        .putString(state.getProperty("uploadId", "")));
+                String uploadId = reply.getString();
+                long received = reply.getLong();
+                if (!uploadId.equals(state.getProperty("uploadId"))) {
+                    state.setProperty("uploadId", uploadId);
+                    saveState(stateFile, state);
+                } else if (received > 0) {
+                    log.accept("Reprise de l'envoi de " + fileName + " à " + received + "/" + size + " octets");
+                }
+                if (received < size) {
+                    sendChunks(connection, uploadId, file, received, size);
+                }
+                request(connection, new Protocol.Message(Protocol.UPLOAD_COMMIT).putString(uploadId).putLong(checksum));
+                Files.deleteIfExists(stateFile);
+                return;
+            } catch (Protocol.RemoteError e) {
+                if (!e.getMessage().startsWith("Bloc")) {
+                    throw e;
+                }
+                // Bloc refusé par le serveur: la session reprend à la dernière position vérifiée
+                lastError = e;
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    private static void stream(Protocol.Connection connection, Path file, String fileName, long size, String layout)
+            throws IOException {
+        connection.send(new Protocol.Message(Protocol.UPLOAD)
+                .putString(fileName).putLong(size).putString(layout != null ? layout : ""));
+        ChunkedOutputStream out = new ChunkedOutputStream(connection.out());
+        byte[] buffer = new byte[ChunkedOutputStream.CHUNK_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            long remaining = size;
+            while (remaining > 0) {
+                int n = in.readNBytes(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n == 0) {
+                    out.abort();
+                    throw new IOException("Fichier modifié pendant l'envoi");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+        out.finish();
+        connection.expectOk();
+    }
+
+    private static void sendChunks(Protocol.Connection connection, String uploadId, Path file, long position, long size)
+            throws IOException {
+        connection.send(new Protocol.Message(Protocol.UPLOAD_CHUNKS).putString(uploadId).putLong(position));
+        DataOutputStream out = connection.out();
+        byte[] buffer = new byte[UPLOAD_CHUNK_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            in.skipNBytes(position);
+            while (position < size) {
+                int n = in.readNBytes(buffer, 0, (int) Math.min(buffer.length, size - position));
+                if (n == 0) {
+                    throw new IOException("Fichier modifié pendant l'envoi");
+                }
+                out.writeInt(n);
+                out.writeInt(UploadSessions.checksum(buffer, n));
+                out.write(buffer, 0, n);
+                position += n;
+            }
+        }
+        out.writeInt(0);
+        out.flush();
+        connection.expectOk();
+    }
+
+    // Télécharge "fileName" dans "target" en passant par "<target>.part", conservé en cas d'échec pour une reprise.
+    // Renvoie la taille du fichier.
+    public static long download(Connector connector, String fileName, Path target, Consumer<String> log)
+            throws IOException {
+        Path partial = Paths.get(target + ".part");
+        IOException lastError = null;
+        boolean restarted = false;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                log.accept("Échec du téléchargement (" + lastError.getMessage() + "), nouvel essai...");
+                pause(attempt);
+            }
+            long offset = Files.exists(partial) ? Files.size(partial) : 0;
+            long fileSize;
+            long checksum;
+            try (Protocol.Connection connection = connector.connect()) {
+                Protocol.Message reply;
+                try {
+                    reply = request(connection, new Protocol.Message(Protocol.DOWNLOAD_RANGE)
+                            .putString(fileName).putLong(offset).putLong(-1));
+                } catch (Protocol.RemoteError e) {
+                    if (offset == 0) {
+                        throw e;
+                    }
+                    // Fichier partiel plus long que le fichier actuel du serveur: il a changé, on recommence
+                    Files.delete(partial);
+                    lastError = e;
+                    continue;
+                }
+                long count = reply.getLong();
+                fileSize = reply.getLong();
+                checksum = reply.getLong();
+                if (offset > 0) {
+                    log.accept("Reprise du téléchargement de " + fileName + " à " + offset + "/" + fileSize + " octets");
+                }
+                try (OutputStream fileOut = Files.newOutputStream(partial,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    long received = new ChunkedInputStream(connection.in()).transferTo(fileOut);
+                    if (received != count) {
+                        throw new IOException("Téléchargement incomplet: " + received + "/" + count + " octets");
+                    }
+                }
+            } catch (Protocol.RemoteError e) {
+                throw e;
+            } catch (IOException e) {
+                lastError = e;
+                continue;
+            }
+
+            // Sans somme de contrôle (fichier stocké avant son ajout), seule la taille est vérifiée
+            if (checksum >= 0 ? checksum(partial, fileSize) != checksum : Files.size(partial) != fileSize) {
+                Files.delete(partial);
+                if (offset == 0 || restarted) {
+                    throw new IOException("Somme de contrôle incorrecte pour " + fileName);
+                }
+                // Le début conservé ne correspond plus au fichier du serveur: un seul nouvel essai complet
+                log.accept("Fichier partiel invalide pour " + fileName + ", téléchargement recommencé");
+                restarted = true;
+                lastError = new IOException("Somme de contrôle incorrecte");
+                continue;
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            return fileSize;
+        }
+        throw lastError;
+    }
+
+    private static Protocol.Message request(Protocol.Connection connection, Protocol.Message message) throws IOException {
+        connection.send(message);
+        return connection.expectOk();
+    }
+
+    // CRC32C du fichier, -1 s'il n'a pas la taille attendue
+    private static long checksum(Path file, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != size) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(UPLOAD_CHUNK_SIZE);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static Properties loadState(Path stateFile, Path file, long size) throws IOException {
+        Properties state = new Properties();
+        if (Files.exists(stateFile)) {
+            try (InputStream in = Files.newInputStream(stateFile)) {
+                state.load(in);
+            }
+        }
+        String identity = file.toAbsolutePath() + ";" + size + ";" + Files.getLastModifiedTime(file).toMillis();
+        if (!identity.equals(state.getProperty("file"))) {
+            // Autre fichier, ou fichier modifié depuis l'envoi interrompu: nouvelle session
+            state.clear();
+            state.setProperty("file", identity);
+        }
+        return state;
+    }
+
+    private static void saveState(Path stateFile, Properties state) {
+        try {
+            Files.createDirectories(stateFile.getParent());
+            try (OutputStream out = Files.newOutputStream(stateFile)) {
+                state.store(out, null);
+            }
+        } catch (IOException e) {
+            // la reprise restera possible tant que le client tourne
+        }
+    }
+
+    private static void pause(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(RETRY_DELAY_MS << (attempt - 2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Transfert interrompu");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.util.*;
+
+// Connexions persistantes du serveur principal vers un serveur secondaire.
+// Chaque session porte une requête à la fois; plusieurs sessions peuvent être ouvertes en parallèle.
+public class SecondaryConnectionPool {
+    private static final int MAX_IDLE_SESSIONS = 8;
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+    // Au-delà de ce délai d'inactivité, une session est vérifiée par PING avant d'être réutilisée
+    private static final long VALIDATE_AFTER_MS = 5_000;
+    private static final int CONNECT_TIMEOUT_MS = 3_000;
+
+    private final SecondaryServerInfo server;
+    private final Deque<Session> idleSessions = new ArrayDeque<>();
+    private boolean closed;
+
+    public SecondaryConnectionPool(SecondaryServerInfo server) {
+        this.server = server;
+    }
+
+    public Session borrow() throws IOException {
+        while (true) {
+            Session session;
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Pool fermé pour le serveur " + server.getId());
+                }
+                session = idleSessions.pollFirst();
+            }
+            if (session == null) {
+                session = new Session(server);
+            } else if (System.currentTimeMillis() - session.lastUsed > VALIDATE_AFTER_MS && !session.ping()) {
+                session.close();
+                continue;
+            }
+            return session;
+        }
+    }
+
+    // Remet une session saine dans le pool (sa connexion doit être alignée sur la requête suivante)
+    public void release(Session session) {
+        session.lastUsed = System.currentTimeMillis();
+        synchronized (this) {
+            if (!closed && idleSessions.size() < MAX_IDLE_SESSIONS) {
+                idleSessions.addFirst(session);
+                return;
+            }
+        }
+        session.close();
+    }
+
+    // Ferme une session dont l'état est incertain (erreur au milieu d'un échange)
+    public void invalidate(Session session) {
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<Session> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Session> it = idleSessions.iterator();
+            while (it.hasNext()) {
+                Session session = it.next();
+                if (now - session.lastUsed > IDLE_TIMEOUT_MS) {
+                    it.remove();
+                    expired.add(session);
+                }
+            }
+        }
+        expired.forEach(Session::close);
+    }
+
+    public void close() {
+        List<Session> sessions;
+        synchronized (this) {
+            closed = true;
+            sessions = new ArrayList<>(idleSessions);
+            idleSessions.clear();
+        }
+        sessions.forEach(Session::close);
+    }
+
+    public static class Session {
+        private final Protocol.Connection connection;
+        private long lastUsed;
+
+        private Session(SecondaryServerInfo server) throws IOException {
+            connection = Protocol.connect(server.getIp(), server.getPort(), CONNECT_TIMEOUT_MS);
+            lastUsed = System.currentTimeMillis();
+        }
+
+        public DataOutputStream out() {
+            return connection.out();
+        }
+
+        public DataInputStream in() {
+            return connection.in();
+        }
+
+        public void send(Protocol.Message message) throws IOException {
+            connection.send(message);
+        }
+
+        public Protocol.Message expectOk() throws IOException {
+            return connection.expectOk();
+        }
+
+        // 0: attente illimitée (valeur à rétablir avant de rendre la session au pool)
+        public void setReadTimeout(int timeoutMs) throws IOException {
+            connection.socket().setSoTimeout(timeoutMs);
+        }
+
+        private boolean ping() {
+            try {
+                send(new Protocol.Message(Protocol.PING));
+                expectOk();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // déjà fermée
+            }
+        }
+    }
+}
@@ -10,14 +10,16 @@ public class SecondaryServer extends JFrame {
     private String storagePath;
     private String mainServerIp;
     private int mainServerPort;
-    private ServerSocket serverSocket;
+    private SelectorServer connectionServer;
     private JTextArea logArea;
+    private PartitionStore partitionStore;
 
     public SecondaryServer(int port, String storagePath, String mainServerIp, int mainServerPort) {
         this.port = port;
         this.storagePath = storagePath;
         this.mainServerIp = mainServerIp;
         this.mainServerPort = mainServerPort;
+        this.partitionStore = new PartitionStore(storagePath, this::log);
         
         setupGUI();
         createStorageDirectory();
@@ -53,17 +55,12 @@ public class SecondaryServer extends JFrame {
     }
 
     private void registerWithMainServer() {
-        try (Socket socket = new Socket(mainServerIp, mainServerPort);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-            
-            out.writeObject("SECONDARY_SERVER");
-            
-            SecondaryServerInfo info = new SecondaryServerInfo();
-            info.setIp(InetAddress.getLocalHost().getHostAddress());
-            info.setPort(port);
-            info.setStoragePath(storagePath);
-            
-            out.writeObject(info);
+        try (Protocol.Connection connection = Protocol.connect(mainServerIp, mainServerPort, 5000)) {
+            connection.send(partitionStore.putStats(new Protocol.Message(Protocol.REGISTER)
+                    .putString(InetAddress.getLocalHost().getHostAddress())
+                    .putInt(port)
+                    .putString(storagePath)));
+            connection.expectOk();
             log("Enregistré auprès du serveur principal");
             
         } catch (IOException e) {
@@ -72,15 +69,17 @@ public class SecondaryServer extends JFrame {
     }
 
     private void startServer() {
+        // Relecture périodique des partitions pour détecter la corruption du disque
+        partitionStore.startScrubber();
+
         Thread serverThread = new Thread(() -> {
             try {
-                serverSocket = new ServerSocket(port);
+                // Connexions traitées en parallèle par un pool borné, les sessions inactives restent dans le sélecteur
+                connectionServer = new SelectorServer(port, PartitionStore.MAX_WORKERS, PartitionStore.MAX_CONNECTIONS,
+                        partitionStore::serveConnection, this::log);
+                connectionServer.open();
                 log("Serveur secondaire démarré sur le port " + port);
-
-                while (true) {
-                    Socket clientSocket = serverSocket.accept();
-                    handleConnection(clientSocket);
-                }
+                connectionServer.run();
             } catch (IOException e) {
                 log("Erreur serveur: " + e.getMessage());
             }
@@ -89,24 +88,6 @@ public class SecondaryServer extends JFrame {
         serverThread.start();
     }
 
-    private void handleConnection(Socket socket) {
-        try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            String action = (String) in.readObject();
-            
-            if (action.equals("STORE_PARTITION")) {
-                String partitionName = (String) in.readObject();
-                byte[] partitionData = (byte[]) in.readObject();
-                
-                File partitionFile = new File(storagePath, partitionName);
-                Files.write(partitionFile.toPath(), partitionData);
-                
-                log("Partition reçue: " + partitionName);
-            }
-        } catch (Exception e) {
-            log("Erreur de traitement: " + e.getMessage());
-        }
-    }
-
     private void log(String message) {
         SwingUtilities.invokeLater(() -> {
             logArea.append(message + "\n");
@@ -12,8 +12,9 @@ public class SecondaryServer1 {
     private String storagePath;
     private String mainServerIp;
     private int mainServerPort;
-    private ServerSocket serverSocket;
+    private SelectorServer connectionServer;
     private volatile boolean isRunning = true;
+    private PartitionStore partitionStore;
 
     // Constructeur avec les paramètres prédéfinis
     public SecondaryServer1() {
@@ -21,6 +22,7 @@ public class SecondaryServer1 {
         this.storagePath = "storage/secondary1";  // Chemin prédéfini
         this.mainServerIp = "localhost";  // IP prédéfinie
         this.mainServerPort = 5000;  // Port du serveur principal prédéfini
+        this.partitionStore = new PartitionStore(storagePath, this::log);
         
         displayServerInfo();
         createStorageDirectory();
@@ -34,6 +36,7 @@ public class SecondaryServer1 {
         this.storagePath = storagePath;
         this.mainServerIp = mainServerIp;
         this.mainServerPort = mainServerPort;
+        this.partitionStore = new PartitionStore(storagePath, this::log);
         
         displayServerInfo();
         createStorageDirectory();
@@ -61,18 +64,12 @@ public class SecondaryServer1 {
     }
 
     private void registerWithMainServer() {
-        try (Socket socket = new Socket(mainServerIp, mainServerPort);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-            
-            out.writeObject("SECONDARY_SERVER");
-            
-            SecondaryServerInfo info = new SecondaryServerInfo(
-                InetAddress.getLocalHost().getHostAddress(),
-                port,
-                storagePath
-            );
-            
-            out.writeObject(info);
+        try (Protocol.Connection connection = Protocol.connect(mainServerIp, mainServerPort, 5000)) {
+            connection.send(partitionStore.putStats(new Protocol.Message(Protocol.REGISTER)
+                    .putString(InetAddress.getLocalHost().getHostAddress())
+                    .putInt(port)
+                    .putString(storagePath)));
+            connection.expectOk();
             log("✅ Enregistré auprès du serveur principal");
             
         } catch (IOException e) {
@@ -83,23 +80,21 @@ public class SecondaryServer1 {
 
     private void startServer() {
         startCommandListener();
+        // Relecture périodique des partitions pour détecter la corruption du disque
+        partitionStore.startScrubber();
 
         Thread serverThread = new Thread(() -> {
             try {
-                serverSocket = new ServerSocket(port);
+                // Connexions traitées en parallèle par un pool borné, les sessions inactives restent dans le sélecteur
+                connectionServer = new SelectorServer(port, PartitionStore.MAX_WORKERS, PartitionStore.MAX_CONNECTIONS,
+                        partitionStore::serveConnection, this::log);
+                connectionServer.open();
                 log("🚀 Serveur secondaire démarré sur le port " + port);
-
-                while (isRunning) {
-                    try {
-                        Socket clientSocket = serverSocket.accept();
-                        handleConnection(clientSocket);
-                    } catch (SocketException e) {
-                        if (!isRunning) break;
-                        log("❌ Erreur de connexion: " + e.getMessage());
-                    }
-                }
+                connectionServer.run();
             } catch (IOException e) {
-                log("❌ Erreur serveur fatale: " + e.getMessage());
+                if (isRunning) {
+                    log("❌ Erreur serveur fatale: " + e.getMessage());
+                }
             }
         });
         serverThread.start();
@@ -108,30 +103,6 @@ public class SecondaryServer1 {
     // [Autres méthodes identiques...]
     // Pour simplifier, j'inclus uniquement les méthodes essentielles
 
-    private void handleConnection(Socket socket) {
-        try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            String action = (String) in.readObject();
-            
-            if (action.equals("STORE_PARTITION")) {
-                String partitionName = (String) in.readObject();
-                byte[] partitionData = (byte[]) in.readObject();
-                
-                File partitionFile = new File(storagePath, partitionName);
-                Files.write(partitionFile.toPath(), partitionData);
-                
-                log("📦 Partition reçue et stockée: " + partitionName);
-            } else if (action.equals("DELETE_PARTITION")) {
-                String partitionPath = (String) in.readObject();
-                File partitionFile = new File(partitionPath);
-                if (partitionFile.delete()) {
-                    log("🗑️ Partition supprimée: " + partitionPath);
-                }
-            }
-        } catch (Exception e) {
-            log("❌ Erreur de traitement: " + e.getMessage());
-        }
-    }
-
     private void log(String message) {
         String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
         System.out.println("[" + timestamp + "] " + message);
@@ -198,8 +169,8 @@ public class SecondaryServer1 {
     private void stopServer() {
         try {
             isRunning = false;
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            if (connectionServer != null) {
+                connectionServer.close();
             }
             log("🛑 Serveur arrêté");
             System.exit(0);
@@ -13,14 +13,16 @@ public class SecondaryServerCon1 {
     private String storagePath;
     private String mainServerIp;
     private int mainServerPort;
-    private ServerSocket serverSocket;
+    private SelectorServer connectionServer;
     private volatile boolean isRunning = true;
+    private PartitionStore partitionStore;
 
     public SecondaryServerCon1(int port, String storagePath, String mainServerIp, int mainServerPort) {
         this.port = port;
         this.storagePath = storagePath;
         this.mainServerIp = mainServerIp;
         this.mainServerPort = mainServerPort;
+        this.partitionStore = new PartitionStore(storagePath, this::log);
         
         displayServerInfo();
         createStorageDirectory();
@@ -47,18 +49,12 @@ public class SecondaryServerCon1 {
     }
 
     private void registerWithMainServer() {
-        try (Socket socket = new Socket(mainServerIp, mainServerPort);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-            
-            out.writeObject("SECONDARY_SERVER");
-            
-            SecondaryServerInfo info = new SecondaryServerInfo(
-                InetAddress.getLocalHost().getHostAddress(),
-                port,
-                storagePath
-            );
-            
-            out.writeObject(info);
+        try (Protocol.Connection connection = Protocol.connect(mainServerIp, mainServerPort, 5000)) {
+            connection.send(partitionStore.putStats(new Protocol.Message(Protocol.REGISTER)
+                    .putString(InetAddress.getLocalHost().getHostAddress())
+                    .putInt(port)
+                    .putString(storagePath)));
+            connection.expectOk();
             log("✅ Enregistré auprès du serveur principal");
             
         } catch (IOException e) {
@@ -70,24 +66,22 @@ public class SecondaryServerCon1 {
     private void startServer() {
         // Thread pour gérer les commandes console
         startCommandListener();
+        // Relecture périodique des partitions pour détecter la corruption du disque
+        partitionStore.startScrubber();
 
         // Thread principal du serveur
         Thread serverThread = new Thread(() -> {
             try {
-                serverSocket = new ServerSocket(port);
+                // Connexions traitées en parallèle par un pool borné, les sessions inactives restent dans le sélecteur
+                connectionServer = new SelectorServer(port, PartitionStore.MAX_WORKERS, PartitionStore.MAX_CONNECTIONS,
+                        partitionStore::serveConnection, this::log);
+                connectionServer.open();
                 log("🚀 Serveur secondaire démarré sur le port " + port);
-
-                while (isRunning) {
-                    try {
-                        Socket clientSocket = serverSocket.accept();
-                        handleConnection(clientSocket);
-                    } catch (SocketException e) {
-                        if (!isRunning) break;
-                        log("❌ Erreur de connexion: " + e.getMessage());
-                    }
-                }
+                connectionServer.run();
             } catch (IOException e) {
-                log("❌ Erreur serveur fatale: " + e.getMessage());
+                if (isRunning) {
+                    log("❌ Erreur serveur fatale: " + e.getMessage());
+                }
             }
         });
         serverThread.start();
@@ -163,35 +157,11 @@ public class SecondaryServerCon1 {
         return String.format("%.1f %sB", size / Math.pow(1024, exp), pre);
     }
 
-    private void handleConnection(Socket socket) {
-        try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-            String action = (String) in.readObject();
-            
-            if (action.equals("STORE_PARTITION")) {
-                String partitionName = (String) in.readObject();
-                byte[] partitionData = (byte[]) in.readObject();
-                
-                File partitionFile = new File(storagePath, partitionName);
-                Files.write(partitionFile.toPath(), partitionData);
-                
-                log("📦 Partition reçue et stockée: " + partitionName);
-            } else if (action.equals("DELETE_PARTITION")) {
-                String partitionPath = (String) in.readObject();
-                File partitionFile = new File(partitionPath);
-                if (partitionFile.delete()) {
-                    log("🗑️ Partition supprimée: " + partitionPath);
-                }
-            }
-        } catch (Exception e) {
-            log("❌ Erreur de traitement: " + e.getMessage());
-        }
-    }
-
     private void stopServer() {
         try {
             isRunning = false;
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            if (connectionServer != null) {
+                connectionServer.close();
             }
             log("🛑 Serveur arrêté");
             System.exit(0);
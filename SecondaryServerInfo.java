@@ -1,13 +1,28 @@
+import java.io.IOException;
 import java.io.Serializable;
-import java.net.Socket;
 
 public class SecondaryServerInfo implements Serializable {
     private static final long serialVersionUID = 1L;
+    // Les petits envois mesurent surtout la latence: ils ne comptent pas dans le débit
+    private static final long MIN_MEASURED_BYTES = 256 * 1024;
+    private static final double BANDWIDTH_SMOOTHING = 0.3;
     private int id;
     private String ip;
     private int port;
     private String storagePath;
-    private transient Socket socket;
+    // Connexions persistantes côté serveur principal, jamais sérialisées
+    private transient SecondaryConnectionPool connectionPool;
+    // Vivacité suivie par les battements (PING) du serveur principal
+    private transient FailureDetector failureDetector;
+    private transient volatile double latencyMs = -1;
+    private transient boolean heartbeatPending;
+    // Capacité et charge pour le placement: remontées par le secondaire (enregistrement, battements)
+    // et mesurées par le serveur principal (transferts en cours, débit des derniers envois)
+    private transient volatile long usableBytes = -1;
+    private transient volatile long totalBytes = -1;
+    private transient volatile int reportedTransfers;
+    private transient int pendingTransfers;
+    private transient double bandwidth = -1;
 
     public SecondaryServerInfo(String ip, int port, String storagePath) {
         this.ip = ip;
@@ -32,8 +47,111 @@ public class SecondaryServerInfo implements Serializable {
         return storagePath;
     }
 
-    public Socket getSocket() {
-        return socket;
+    public synchronized SecondaryConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new SecondaryConnectionPool(this);
+        }
+        return connectionPool;
+    }
+
+    // À l'enregistrement, y compris quand le serveur revient après un redémarrage:
+    // les connexions vers l'ancienne instance sont fermées et la suspicion repart de zéro
+    public synchronized void resetLiveness(long heartbeatIntervalMs) {
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+        failureDetector = new FailureDetector(heartbeatIntervalMs, System.currentTimeMillis());
+        latencyMs = -1;
+    }
+
+    public synchronized FailureDetector getFailureDetector() {
+        return failureDetector;
+    }
+
+    // Faux dès que le serveur est suspect: il ne reçoit plus de nouvelles partitions
+    public boolean isAvailable() {
+        FailureDetector detector = getFailureDetector();
+        return detector == null || detector.isAvailable(System.currentTimeMillis());
+    }
+
+    public void recordHeartbeat(double latencyMs) {
+        this.latencyMs = latencyMs;
+        getFailureDetector().heartbeat(System.currentTimeMillis());
+    }
+
+    // Échec de connexion ou battement sans réponse: suspect jusqu'au prochain battement réussi
+    public void markUnreachable() {
+        FailureDetector detector = getFailureDetector();
+        if (detector != null) {
+            detector.failure();
+        }
+    }
+
+    // Temps d'aller-retour du dernier battement réussi, -1 si aucun
+    public double getLatencyMs() {
+        return latencyMs;
+    }
+
+    // Un seul battement en cours par serveur: un serveur injoignable ne bloque pas ceux des autres
+    public synchronized boolean beginHeartbeat() {
+        if (heartbeatPending) {
+            return false;
+        }
+        heartbeatPending = true;
+        return true;
+    }
+
+    public synchronized void endHeartbeat() {
+        heartbeatPending = false;
+    }
+
+    // Champs optionnels de REGISTER et de la réponse au PING (PartitionStore.putStats)
+    public void readStats(Protocol.Message message) throws IOException {
+        if (message.hasRemaining()) {
+            usableBytes = message.getLong();
+            totalBytes = message.getLong();
+            reportedTransfers = message.getInt();
+        }
+    }
+
+    // Serveur revenu sous une nouvelle instance: l'espace disque remonté à son enregistrement remplace l'ancien
+    public void copyStats(SecondaryServerInfo registering) {
+        usableBytes = registering.usableBytes;
+        totalBytes = registering.totalBytes;
+        reportedTransfers = registering.reportedTransfers;
+    }
+
+    // -1 si le secondaire ne l'a pas remonté
+    public long getUsableBytes() {
+        return usableBytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // Transferts en cours: le plus grand du compte remonté par le secondaire et de ceux lancés par le serveur principal
+    public synchronized int getLoad() {
+        return Math.max(reportedTransfers, pendingTransfers);
+    }
+
+    public synchronized void beginTransfer() {
+        pendingTransfers++;
+    }
+
+    // Un envoi assez long pour mesurer le débit met à jour sa moyenne glissante
+    public synchronized void endTransfer(long bytes, long nanos) {
+        pendingTransfers--;
+        if (bytes >= MIN_MEASURED_BYTES && nanos > 0) {
+            double measured = bytes * 1e9 / nanos;
+            bandwidth = bandwidth < 0 ? measured : BANDWIDTH_SMOOTHING * measured + (1 - BANDWIDTH_SMOOTHING) * bandwidth;
+        }
+    }
+
+    // Octets par seconde, -1 tant qu'aucun envoi n'a été mesuré
+    public synchronized double getBandwidth() {
+        return bandwidth;
     }
 
     // Setters
@@ -53,9 +171,6 @@ public class SecondaryServerInfo implements Serializable {
         this.storagePath = storagePath;
     }
 
-    public void setSocket(Socket socket) {
-        this.socket = socket;
-    }
     public SecondaryServerInfo() {
 
     }
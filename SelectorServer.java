@@ -0,0 +1,189 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Serveur à sélecteur: les connexions inactives attendent dans le sélecteur sans occuper de thread.
+// Dès qu'une connexion a des données à lire, elle est confiée en mode bloquant à un pool de taille bornée,
+// puis rendue au sélecteur quand le traitement demande à la garder ouverte.
+public class SelectorServer {
+    // Traite les requêtes disponibles sur une connexion; renvoie true pour la garder ouverte
+    public interface Handler {
+        boolean serve(Client client) throws Exception;
+    }
+
+    public static class Client {
+        private final SocketChannel channel;
+        private Object state;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public Socket socket() {
+            return channel.socket();
+        }
+
+        // État propre au protocole, conservé entre deux passages dans le sélecteur
+        public Object getState() {
+            return state;
+        }
+
+        public void setState(Object state) {
+            this.state = state;
+        }
+    }
+
+    private final int port;
+    private final int maxConnections;
+    private final Handler handler;
+    private final Consumer<String> logger;
+    private final ExecutorService workers;
+    private final Queue<Client> parkedClients = new ConcurrentLinkedQueue<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private volatile Selector selector;
+    private volatile ServerSocketChannel serverChannel;
+
+    public SelectorServer(int port, int maxWorkers, int maxConnections, Handler handler, Consumer<String> logger) {
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.handler = handler;
+        this.logger = logger;
+        this.workers = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "connection-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ((ThreadPoolExecutor) workers).allowCoreThreadTimeOut(true);
+    }
+
+    public void open() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public boolean isOpen() {
+        return serverChannel != null && serverChannel.isOpen();
+    }
+
+    public int getOpenConnections() {
+        return clients.size();
+    }
+
+    // Boucle du sélecteur, à exécuter dans un thread dédié; se termine à la fermeture du serveur
+    public void run() throws IOException {
+        List<Client> ready = new ArrayList<>();
+        while (serverChannel.isOpen()) {
+            try {
+                selector.select();
+
+                boolean cancelled;
+                do {
+                    registerParkedClients();
+                    cancelled = collectReadyClients(ready);
+                    if (cancelled) {
+                        // Retire les clés annulées pour que les canaux puissent repasser en mode bloquant
+                        selector.selectNow();
+                    }
+                } while (cancelled);
+            } catch (ClosedSelectorException e) {
+                return;
+            }
+
+            for (Client client : ready) {
+                workers.execute(() -> serve(client));
+            }
+            ready.clear();
+        }
+    }
+
+    private boolean collectReadyClients(List<Client> ready) throws IOException {
+        boolean cancelled = false;
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                acceptClients();
+            } else if (key.isReadable()) {
+                key.cancel();
+                ready.add((Client) key.attachment());
+                cancelled = true;
+            }
+        }
+        return cancelled;
+    }
+
+    private void acceptClients() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (clients.size() >= maxConnections) {
+                channel.close();
+                logger.accept("❌ Connexion refusée: limite de " + maxConnections + " connexions atteinte");
+                continue;
+            }
+            Client client = new Client(channel);
+            clients.add(client);
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ, client);
+        }
+    }
+
+    private void registerParkedClients() {
+        Client client;
+        while ((client = parkedClients.poll()) != null) {
+            try {
+                client.channel.register(selector, SelectionKey.OP_READ, client);
+            } catch (IOException e) {
+                close(client);
+            }
+        }
+    }
+
+    private void serve(Client client) {
+        try {
+            client.channel.configureBlocking(true);
+            if (handler.serve(client)) {
+                client.channel.configureBlocking(false);
+                parkedClients.add(client);
+                selector.wakeup();
+                return;
+            }
+        } catch (Exception e) {
+            logger.accept("❌ Erreur de connexion: " + e.getMessage());
+        }
+        close(client);
+    }
+
+    private void close(Client client) {
+        clients.remove(client);
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {
+            // déjà fermée
+        }
+    }
+
+    public void close() throws IOException {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        if (selector != null) {
+            selector.close();
+        }
+        for (Client client : clients) {
+            close(client);
+        }
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,353 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Téléchargements reprenables vers le serveur principal. Une session, identifiée par son uploadId, accumule
+// les blocs reçus dans <id>.data et inscrit chaque bloc vérifié (CRC32C) dans <id>.idx:
+// [long position][int taille][int CRC32C]. Après une coupure, le client reprend à getReceived().
+// Au redémarrage du serveur, les blocs sont revérifiés et la session est coupée au dernier bloc intact.
+// Le fichier n'est stocké sur les secondaires qu'une fois tous les blocs reçus (commit).
+public class UploadSessions {
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int INDEX_RECORD_SIZE = 16;
+    // Une session sans activité pendant 24 h est abandonnée
+    private static final long EXPIRATION_MS = 24L * 60 * 60 * 1000;
+
+    public static class Session {
+        private final String id;
+        private final String fileName;
+        private final long size;
+        private final String layout;
+        private final FileChannel data;
+        private final FileChannel index;
+        private long received;
+        private boolean committing;
+        private boolean discarded;
+
+        private Session(String id, String fileName, long size, String layout, FileChannel data, FileChannel index,
+                        long received) {
+            this.id = id;
+            this.fileName = fileName;
+            this.size = size;
+            this.layout = layout;
+            this.data = data;
+            this.index = index;
+            this.received = received;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        // Chaîne vide: disposition par défaut du serveur
+        public String getLayout() {
+            return layout;
+        }
+
+        public synchronized long getReceived() {
+            return received;
+        }
+
+        // Écrit un bloc vérifié et son point de reprise; renvoie null, ou la raison du refus
+        private synchronized String append(long position, byte[] chunk, int length, int crc) throws IOException {
+            if (discarded || committing) {
+                return "Session de téléchargement terminée";
+            }
+            if (position != received) {
+                return "Bloc hors séquence: position " + position + ", attendue " + received;
+            }
+            if (received + length > size) {
+                return "Bloc au-delà de la taille annoncée (" + size + " octets)";
+            }
+            writeFully(data, ByteBuffer.wrap(chunk, 0, length), position);
+            ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE).putLong(position).putInt(length).putInt(crc);
+            record.flip();
+            writeFully(index, record, index.size());
+            received += length;
+            return null;
+        }
+
+        private synchronized void checkpoint() throws IOException {
+            if (!discarded) {
+                data.force(false);
+                index.force(false);
+            }
+        }
+
+        private synchronized void close() throws IOException {
+            discarded = true;
+            data.close();
+            index.close();
+        }
+    }
+
+    private final Path directory;
+    private final Consumer<String> logger;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public UploadSessions(Path directory, Consumer<String> logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    // Reprend la session "uploadId" si elle porte sur le même fichier et la même taille, sinon en crée une nouvelle
+    public synchronized Session open(String fileName, long size, String layout, String uploadId) throws IOException {
+        if (size < 0) {
+            throw new IOException("Taille de fichier invalide: " + size);
+        }
+        Session session = sessions.get(uploadId);
+        if (session == null && isValidId(uploadId) && Files.exists(metaFile(uploadId))) {
+            session = recover(uploadId);
+        }
+        if (session != null && session.fileName.equals(fileName) && session.size == size) {
+            touch(session);
+            return session;
+        }
+
+        Files.createDirectories(directory);
+        String id = UUID.randomUUID().toString();
+        Properties meta = new Properties();
+        meta.setProperty("fileName", fileName);
+        meta.setProperty("size", Long.toString(size));
+        meta.setProperty("layout", layout);
+        try (OutputStream out = Files.newOutputStream(metaFile(id))) {
+            meta.store(out, null);
+        }
+        session = new Session(id, fileName, size, layout, openChannel(dataFile(id)), openChannel(indexFile(id)), 0);
+        sessions.put(id, session);
+        logger.accept("📤 Session de téléchargement reprenable ouverte: " + fileName + " (" + id + ")");
+        return session;
+    }
+
+    public Session get(String uploadId) {
+        return sessions.get(uploadId);
+    }
+
+    // Lit les blocs [int taille][int CRC32C][octets] jusqu'à une taille nulle. Un bloc corrompu ou hors séquence
+    // arrête l'écriture et la suite du flux est lue sans être gardée. Renvoie null, ou la cause de l'arrêt;
+    // "session" null (session inconnue): le flux est seulement consommé.
+    public String receive(Session session, long offset, DataInputStream in) throws IOException {
+        String error = session == null ? "Session de téléchargement inconnue" : null;
+        long position = offset;
+        byte[] buffer = new byte[0];
+        while (true) {
+            int length = in.readInt();
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > MAX_CHUNK_SIZE) {
+                throw new IOException("Bloc de téléchargement invalide: " + length + " octets");
+            }
+            int crc = in.readInt();
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            in.readFully(buffer, 0, length);
+            if (error != null) {
+                continue;
+            }
+            if (checksum(buffer, length) != crc) {
+                error = "Bloc corrompu à la position " + position;
+                continue;
+            }
+            error = session.append(position, buffer, length, crc);
+            position += length;
+        }
+        if (session != null) {
+            session.checkpoint();
+            touch(session);
+        }
+        return error;
+    }
+
+    // Prépare le stockage: tous les blocs doivent être reçus et la somme de contrôle du fichier complet
+    // doit correspondre à celle du client. Une somme différente abandonne la session (le client recommence).
+    // Renvoie null si le fichier peut être stocké; les blocs sont alors refusés jusqu'à endCommit().
+    public String beginCommit(Session session, long expectedChecksum) throws IOException {
+        synchronized (session) {
+            if (session.discarded || session.committing) {
+                return "Session de téléchargement terminée";
+            }
+            if (session.received != session.size) {
+                return "Téléchargement incomplet: " + session.received + "/" + session.size + " octets";
+            }
+            session.committing = true;
+        }
+        CRC32C crc = new CRC32C();
+        try (InputStream in = openData(session)) {
+            byte[] buffer = new byte[ChunkedOutputStream.CHUNK_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            endCommit(session, false);
+            throw e;
+        }
+        if (crc.getValue() != expectedChecksum) {
+            discard(session);
+            return "Somme de contrôle différente de celle du client: session abandonnée";
+        }
+        return null;
+    }
+
+    // Fichier stocké: la session est supprimée; sinon elle reste ouverte pour un nouvel essai
+    public void endCommit(Session session, boolean stored) throws IOException {
+        if (stored) {
+            discard(session);
+        } else {
+            synchronized (session) {
+                session.committing = false;
+            }
+        }
+    }
+
+    public InputStream openData(Session session) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(dataFile(session.id)), ChunkedOutputStream.CHUNK_SIZE);
+    }
+
+    public void discard(Session session) throws IOException {
+        sessions.remove(session.id, session);
+        session.close();
+        Files.deleteIfExists(dataFile(session.id));
+        Files.deleteIfExists(indexFile(session.id));
+        Files.deleteIfExists(metaFile(session.id));
+    }
+
+    // Abandonne les sessions sans activité depuis EXPIRATION_MS, y compris celles d'avant un redémarrage
+    public synchronized void expire() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - EXPIRATION_MS;
+        try (DirectoryStream<Path> metas = Files.newDirectoryStream(directory, "*.properties")) {
+            for (Path meta : metas) {
+                String name = meta.getFileName().toString();
+                String id = name.substring(0, name.length() - ".properties".length());
+                if (Files.getLastModifiedTime(meta).toMillis() >= limit) {
+                    continue;
+                }
+                Session session = sessions.get(id);
+                if (session != null) {
+                    synchronized (session) {
+                        if (session.committing) {
+                            continue;
+                        }
+                    }
+                    discard(session);
+                } else {
+                    Files.deleteIfExists(dataFile(id));
+                    Files.deleteIfExists(indexFile(id));
+                    Files.deleteIfExists(meta);
+                }
+                logger.accept("🗑️ Session de téléchargement expirée: " + id);
+            }
+        } catch (IOException e) {
+            logger.accept("❌ Erreur lors du nettoyage des sessions de téléchargement: " + e.getMessage());
+        }
+    }
+
+    // Session d'avant un redémarrage: chaque bloc inscrit est relu et vérifié, la session est coupée
+    // au premier bloc absent ou corrompu
+    private Session recover(String id) throws IOException {
+        Properties meta = new Properties();
+        try (InputStream in = Files.newInputStream(metaFile(id))) {
+            meta.load(in);
+        }
+        FileChannel data = openChannel(dataFile(id));
+        FileChannel index = openChannel(indexFile(id));
+        long position = 0;
+        long records = 0;
+        ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+        byte[] chunk = new byte[0];
+        while (true) {
+            record.clear();
+            if (index.read(record, records * INDEX_RECORD_SIZE) < INDEX_RECORD_SIZE) {
+                break;
+            }
+            record.flip();
+            long offset = record.getLong();
+            int length = record.getInt();
+            int crc = record.getInt();
+            if (offset != position || length <= 0 || length > MAX_CHUNK_SIZE || position + length > data.size()) {
+                break;
+            }
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            ByteBuffer content = ByteBuffer.wrap(chunk, 0, length);
+            while (content.hasRemaining() && data.read(content, position + content.position()) > 0) {
+                // lecture jusqu'à la fin du bloc
+            }
+            if (content.hasRemaining() || checksum(chunk, length) != crc) {
+                break;
+            }
+            position += length;
+            records++;
+        }
+        data.truncate(position);
+        index.truncate(records * INDEX_RECORD_SIZE);
+
+        Session session = new Session(id, meta.getProperty("fileName"), Long.parseLong(meta.getProperty("size")),
+                meta.getProperty("layout", ""), data, index, position);
+        sessions.put(id, session);
+        logger.accept("📤 Session de téléchargement reprise après redémarrage: " + session.fileName
+                + " (" + position + "/" + session.size + " octets vérifiés)");
+        return session;
+    }
+
+    private void touch(Session session) throws IOException {
+        try {
+            Files.setLastModifiedTime(metaFile(session.id), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // session terminée entre-temps
+        }
+    }
+
+    // Seuls les identifiants générés par open() désignent un fichier du répertoire des sessions
+    private static boolean isValidId(String uploadId) {
+        return uploadId.matches("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    }
+
+    private Path dataFile(String id) {
+        return directory.resolve(id + ".data");
+    }
+
+    private Path indexFile(String id) {
+        return directory.resolve(id + ".idx");
+    }
+
+    private Path metaFile(String id) {
+        return directory.resolve(id + ".properties");
+    }
+
+    private static FileChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    static int checksum(byte[] data, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+}